@@ -0,0 +1,59 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end analysis of the RFs of a synthetic ASN dataset, to measure how
+ * the whole run scales with the number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AnalysisBenchmark {
+
+	@Param({"1", "10"})
+	int scale;
+
+	@Param({"1", "2", "4", "8"})
+	int threads;
+
+	private DatasetPartition partition;
+	private File output;
+
+
+	@Setup
+	public void setup() throws Exception {
+		partition = new DatasetPartition(BenchmarkData.synthetic(scale), 1, 2);
+		output = File.createTempFile("asn-rfs", ".csv");
+		AsnAnalysis.executor = new GroupExecutor(threads);
+	}
+
+	@TearDown
+	public void tearDown() {
+		AsnAnalysis.executor.shutdown();
+		output.delete();
+	}
+
+	@Benchmark
+	public void svmRFsLevel() throws Exception {
+		AsnAnalysis.svmRFsLevel(partition, output.getPath(), 1, null);
+	}
+
+}
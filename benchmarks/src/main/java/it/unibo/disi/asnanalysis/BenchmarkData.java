@@ -0,0 +1,96 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Datasets used by the benchmarks: the ARFF files shipped in data/input and
+ * synthetic datasets with the schema of the ASN dataset.
+ *
+ * The input folder defaults to "../data/input" (i.e. the benchmarks are run
+ * from the benchmarks folder) and can be changed with -Dasn.data=FOLDER.
+ */
+public class BenchmarkData {
+
+	/** Rows of a synthetic dataset at scale 1 (about the size of a large RF). */
+	static final int BASE_ROWS = 1000;
+
+	/** Number of RFs of a synthetic dataset. */
+	static final int NUM_RFS = 16;
+
+	static final String TEMPLATE = "experiment1/13_svm.arff";
+
+
+	static File dataDir() {
+		return new File(System.getProperty("asn.data", ".." + File.separator + "data" + File.separator + "input"));
+	}
+
+	/**
+	 * Loads one of the shipped ARFF files, e.g. "experiment1/01B1_svm.arff".
+	 */
+	static Instances load(String file) throws Exception {
+		Instances dataSet = new DataSource(new File(dataDir(), file).getPath()).getDataSet();
+		dataSet.setClass(dataSet.attribute("Abilitato"));
+		return dataSet;
+	}
+
+	/**
+	 * A synthetic dataset with the layout of dataset-ASN-2012.arff, i.e. the
+	 * first attribute of the template, the RF (column 2), the level (column 3),
+	 * an extra numeric column (column 4) and then the remaining attributes of
+	 * the template (327 numeric and nominal indicators, with "Abilitato" as
+	 * the last one).
+	 *
+	 * The rows are drawn with replacement from the template, so the values
+	 * keep the distributions (and the correlations) of the real indicators,
+	 * and are assigned to random RFs and levels.
+	 */
+	static Instances synthetic(int scale) throws Exception {
+		return synthetic(load(TEMPLATE), BASE_ROWS * scale, NUM_RFS, 1);
+	}
+
+	static Instances synthetic(Instances template, int numRows, int numRFs, long seed) {
+		String[] areas = {"01","02","03","04","05","06","07","08","09","10","11","12","13","14"};
+		List<String> rfs = new ArrayList<String>(numRFs);
+		for (int i = 0; i < numRFs; i++) {
+			rfs.add(areas[i % areas.length] + "/" + (char) ('A' + i / areas.length) + "1");
+		}
+		List<String> levels = new ArrayList<String>();
+		levels.add("I");
+		levels.add("II");
+
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(template.attribute(0).copy(template.attribute(0).name()));
+		attributes.add(new Attribute("RF", rfs));
+		attributes.add(new Attribute("Level", levels));
+		attributes.add(new Attribute("Session"));
+		for (int i = 1; i < template.numAttributes(); i++) {
+			attributes.add(template.attribute(i).copy(template.attribute(i).name()));
+		}
+
+		Instances dataSet = new Instances("synthetic-ASN-" + numRows, attributes, numRows);
+		Random rand = new Random(seed);
+		for (int r = 0; r < numRows; r++) {
+			Instance source = template.instance(rand.nextInt(template.numInstances()));
+			double[] values = new double[attributes.size()];
+			values[0] = source.value(0);
+			values[1] = rand.nextInt(numRFs);
+			values[2] = rand.nextInt(levels.size());
+			values[3] = 1 + rand.nextInt(5);
+			for (int i = 1; i < template.numAttributes(); i++) {
+				values[i + 3] = source.value(i);
+			}
+			dataSet.add(new DenseInstance(1.0, values));
+		}
+		return dataSet;
+	}
+
+}
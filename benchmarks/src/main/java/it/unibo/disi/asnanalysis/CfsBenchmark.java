@@ -0,0 +1,72 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import weka.attributeSelection.AttributeSelection;
+import weka.attributeSelection.BestFirst;
+import weka.attributeSelection.CfsSubsetEval;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * The CFS feature selection of featureSel on all the RFs of level 1 of a
+ * synthetic ASN dataset (1x and 10x rows), with Weka's CfsSubsetEval and with
+ * FastCfsSubsetEval.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CfsBenchmark {
+
+	@Param({"1", "10"})
+	int scale;
+
+	@Param({"weka", "fast"})
+	String impl;
+
+	private Instances[] rfs;
+
+
+	@Setup
+	public void setup() throws Exception {
+		DatasetPartition partition = new DatasetPartition(BenchmarkData.synthetic(scale), 1, 2);
+		FeatureMatrix matrix = partition.getMatrix();
+		int numRFs = partition.getHeader().attribute(1).numValues();
+		rfs = new Instances[numRFs];
+		for (int rf = 0; rf < numRFs; rf++) {
+			rfs[rf] = matrix.viewWithout(partition.rows(rf, 0), new int[] {1}, "Abilitato").toInstances();
+		}
+	}
+
+	@Benchmark
+	public void select(Blackhole bh) throws Exception {
+		for (Instances dataSet : rfs) {
+			CfsSubsetEval eval = impl.equals("fast") ? new FastCfsSubsetEval() : new CfsSubsetEval();
+			eval.setOptions(Utils.splitOptions("-P 1 -E 1"));
+			BestFirst search = new BestFirst();
+			search.setOptions(Utils.splitOptions("-D 1 -N 5"));
+			AttributeSelection selection = new AttributeSelection();
+			selection.setEvaluator(eval);
+			selection.setSearch(search);
+			selection.SelectAttributes(dataSet);
+			bh.consume(selection.selectedAttributes());
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Checks that a Checkpoint journal whose last line was cut off by a crash is
+ * resumed with its complete entries only, and that the entries added after
+ * the restart are not merged with the partial line.
+ *
+ * Run with java -cp target/benchmarks.jar it.unibo.disi.asnanalysis.CheckpointCheck
+ */
+public class CheckpointCheck {
+
+	public static void main(String[] args) throws Exception {
+		File file = File.createTempFile("asn-check", ".journal");
+		try {
+			Checkpoint journal = new Checkpoint(file, "fingerprint");
+			journal.add("01/B1", new String[] {"01/B1", "0.730", "0.818", "0.771"});
+			journal.add("02/A1", new String[] {"02/A1", "0.567", "0.618", "0.591"});
+			journal.close();
+
+			// the process is killed while writing the third entry
+			try (FileOutputStream out = new FileOutputStream(file, true)) {
+				out.write("03/A1,4,03/A1,0.5".getBytes(StandardCharsets.UTF_8));
+			}
+
+			journal = new Checkpoint(file, "fingerprint");
+			check(journal.completed("03/A1") == null, "the partial entry is not completed");
+			journal.add("04/A1", new String[] {"04/A1", "0.596", "0.654", "0.624"});
+			journal.close();
+
+			journal = new Checkpoint(file, "fingerprint");
+			check(Arrays.equals(journal.completed("01/B1")[0], new String[] {"01/B1", "0.730", "0.818", "0.771"}), "01/B1 is kept");
+			check(Arrays.equals(journal.completed("02/A1")[0], new String[] {"02/A1", "0.567", "0.618", "0.591"}), "02/A1 is kept");
+			check(journal.completed("03/A1") == null, "the partial entry is dropped");
+			check(Arrays.equals(journal.completed("04/A1")[0], new String[] {"04/A1", "0.596", "0.654", "0.624"}), "04/A1 is read back");
+			journal.close();
+			check(!new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).contains("0.504/A1"), "no merged line");
+			System.out.println("OK");
+		} finally {
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
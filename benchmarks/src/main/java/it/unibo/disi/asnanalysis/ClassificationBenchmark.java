@@ -0,0 +1,88 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+/**
+ * 10-fold cross-validations of doSvmClassification and
+ * doLogisticClassification on the shipped experiment datasets, with a varying
+ * number of threads for the folds.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ClassificationBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Pool {
+		@Param({"1", "2", "4", "8"})
+		int threads;
+
+		@Setup
+		public void setup() {
+			AsnAnalysis.executor = new GroupExecutor(threads);
+		}
+
+		@TearDown
+		public void tearDown() {
+			AsnAnalysis.executor.shutdown();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class SvmData {
+		@Param({"experiment1/01B1_svm.arff", "experiment1/13A1_svm.arff", "experiment1/01_svm.arff", "experiment1/13_svm.arff",
+			"experiment2/05E2_svm.arff", "experiment2/13A1_svm.arff"})
+		String file;
+
+		Instances dataSet;
+
+		@Setup
+		public void setup() throws Exception {
+			dataSet = BenchmarkData.load(file);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class LogisticData {
+		@Param({"experiment1/01B1_jensen8.arff", "experiment1/13_jensen8.arff", "experiment2/05E2_tregella.arff",
+			"experiment2/13A1_tregella.arff"})
+		String file;
+
+		Instances dataSet;
+
+		@Setup
+		public void setup() throws Exception {
+			dataSet = BenchmarkData.load(file);
+		}
+	}
+
+
+	@Benchmark
+	public Evaluation svm(Pool pool, SvmData data) throws Exception {
+		return AsnAnalysis.doSvmClassification(data.dataSet, "Abilitato");
+	}
+
+	@Benchmark
+	public Evaluation logistic(Pool pool, LogisticData data) throws Exception {
+		return AsnAnalysis.doLogisticClassification(data.dataSet, "Abilitato");
+	}
+
+}
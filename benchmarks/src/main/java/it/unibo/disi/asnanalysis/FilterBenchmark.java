@@ -0,0 +1,86 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Remove;
+import weka.filters.unsupervised.instance.RemoveWithValues;
+
+/**
+ * Extraction of the datasets of all the RFs of a level from a synthetic ASN
+ * dataset (1x, 10x and 100x rows): the RemoveWithValues/Remove filter chain
+ * originally used by the analyses versus DatasetPartition.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+	@Param({"1", "10", "100"})
+	int scale;
+
+	private Instances dataSet;
+	private DatasetPartition partition;
+
+
+	@Setup
+	public void setup() throws Exception {
+		dataSet = BenchmarkData.synthetic(scale);
+		partition = new DatasetPartition(dataSet, 1, 2);
+	}
+
+	@Benchmark
+	public void removeWithValues(Blackhole bh) throws Exception {
+		int numRFs = dataSet.attribute(1).numValues();
+		for (int indexRF = 1; indexRF <= numRFs; indexRF++) {
+			Filter filterRWV = new RemoveWithValues();
+			filterRWV.setOptions(Utils.splitOptions("-S 0.0 -C 2 -L " + indexRF + " -V -M"));
+			filterRWV.setInputFormat(dataSet);
+			Instances dataSetFiltered = Filter.useFilter(dataSet, filterRWV);
+
+			filterRWV.setOptions(Utils.splitOptions("-S 0.0 -C 3 -L 1 -V -M"));
+			filterRWV.setInputFormat(dataSetFiltered);
+			Instances dataSetFilteredLevel = Filter.useFilter(dataSetFiltered, filterRWV);
+
+			bh.consume(removeAttributes(dataSetFilteredLevel));
+		}
+	}
+
+	@Benchmark
+	public void partitionSubset(Blackhole bh) throws Exception {
+		for (int rf = 0; rf < partition.numRFs(); rf++) {
+			bh.consume(removeAttributes(partition.subset(rf, 0)));
+		}
+	}
+
+	@Benchmark
+	public DatasetPartition partitionBuild() {
+		return new DatasetPartition(dataSet, 1, 2);
+	}
+
+	private Instances removeAttributes(Instances data) throws Exception {
+		Filter filterRm = new Remove();
+		filterRm.setOptions(Utils.splitOptions("-R 2,3,4"));
+		filterRm.setInputFormat(data);
+		return Filter.useFilter(data, filterRm);
+	}
+
+}
@@ -0,0 +1,66 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.core.Instances;
+import weka.core.converters.ArffSaver;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * The loading of a synthetic ASN dataset (1x and 10x rows) saved as an ARFF
+ * file, with Weka's DataSource and with ArffParser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+
+	@Param({"1", "10"})
+	int scale;
+
+	@Param({"weka", "fast"})
+	String impl;
+
+	private File file;
+
+
+	@Setup
+	public void setup() throws Exception {
+		file = File.createTempFile("asn-bench-", ".arff");
+		ArffSaver saver = new ArffSaver();
+		saver.setInstances(BenchmarkData.synthetic(scale));
+		saver.setFile(file);
+		saver.writeBatch();
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public Instances load() throws Exception {
+		if (impl.equals("fast")) {
+			return ArffParser.load(file.getPath());
+		}
+		return new DataSource(file.getPath()).getDataSet();
+	}
+
+}
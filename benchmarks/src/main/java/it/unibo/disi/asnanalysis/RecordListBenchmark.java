@@ -0,0 +1,66 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sorting and saving of a MyRecordList with the layout of the RF analysis.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordListBenchmark {
+
+	@Param({"184", "1840", "18400"})
+	int numRecords;
+
+	private String[][] records;
+	private File output;
+
+
+	@Setup
+	public void setup() throws Exception {
+		Random rand = new Random(1);
+		records = new String[numRecords][];
+		for (int i = 0; i < numRecords; i++) {
+			records[i] = new String[] {"RF-" + i, AsnAnalysis.roundDouble(rand.nextDouble()),
+				AsnAnalysis.roundDouble(rand.nextDouble()), AsnAnalysis.roundDouble(rand.nextDouble())};
+		}
+		output = File.createTempFile("asn-records", ".csv");
+	}
+
+	@TearDown
+	public void tearDown() {
+		output.delete();
+	}
+
+	@Benchmark
+	public MyRecordList sortAndSave() throws Exception {
+		MyRecordList rl = new MyRecordList();
+		rl.setHeader("Recruitment Field", "Precision", "Recall", "F-Measure");
+		for (String[] record : records) {
+			rl.addRecord(record);
+		}
+		rl.sortByCol(3, MyRecordList.SortDESC);
+		rl.saveToFile(output.getPath());
+		return rl;
+	}
+
+}
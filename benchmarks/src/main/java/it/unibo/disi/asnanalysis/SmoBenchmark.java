@@ -0,0 +1,63 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.functions.SMO;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Training of a single linear SVM (the options of doSvmClassification) on the
+ * shipped experiment datasets, with Weka's SMO and with FastSMO: with the
+ * default kernel cache, and with the 8 MB share of a thread of the default
+ * -kernelcache on 32 threads, where the kernel matrix of the larger datasets
+ * does not fit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SmoBenchmark {
+
+	static final String OPTS = "-C 1.0 -L 0.001 -P 1.0E-12 -N 0 -V -1 -W 1 -K \"weka.classifiers.functions.supportVector.PolyKernel -E 1.0 -C 250007\"";
+
+	@Param({"experiment1/01B1_svm.arff", "experiment1/13A1_svm.arff", "experiment1/01_svm.arff", "experiment1/13_svm.arff"})
+	String file;
+
+	@Param({"weka", "fast", "fast-8MB"})
+	String impl;
+
+	Instances dataSet;
+
+	@Setup
+	public void setup() throws Exception {
+		dataSet = BenchmarkData.load(file);
+	}
+
+
+	@Benchmark
+	public SMO train() throws Exception {
+		SMO svm = impl.startsWith("fast") ? new FastSMO() : new SMO();
+		if (impl.equals("fast-8MB")) {
+			((FastSMO) svm).setCacheBudget(8L << 20);
+		}
+		svm.setOptions(Utils.splitOptions(OPTS));
+		svm.buildClassifier(dataSet);
+		return svm;
+	}
+
+}
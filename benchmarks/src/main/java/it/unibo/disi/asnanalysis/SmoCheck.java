@@ -0,0 +1,93 @@
+package it.unibo.disi.asnanalysis;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import weka.classifiers.functions.SMO;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Checks that FastSMO trains the same models as Weka's SMO, hence the same
+ * predictions, on the shipped experiment datasets: on the linear path with
+ * the full kernel cache, with the hashed cache of a budget smaller than the
+ * kernel matrix, and without cache, and with a quadratic kernel (trained by
+ * SMO with a kernel cache sized on the training set).
+ *
+ * The weights and the bias of each binary machine must be the same bit for
+ * bit, and so must the printed models but the line of the kernel statistics
+ * (FastSMO does not count the cache hits of the linear path).
+ *
+ * Run with java -cp target/benchmarks.jar it.unibo.disi.asnanalysis.SmoCheck [FILE...]
+ */
+public class SmoCheck {
+
+	static final String[] FILES = {"experiment1/01B1_svm.arff", "experiment1/13A1_svm.arff", "experiment1/01B1_jensen8.arff", "experiment1/13A1_jensen8.arff"};
+
+	static final String QUADRATIC = "-C 1.0 -L 0.001 -P 1.0E-12 -N 0 -V -1 -W 1 -K \"weka.classifiers.functions.supportVector.PolyKernel -E 2.0 -C 250007\"";
+
+	public static void main(String[] args) throws Exception {
+		for (String file : args.length > 0 ? args : FILES) {
+			Instances dataSet = BenchmarkData.load(file);
+			check(file, "linear", dataSet, SmoBenchmark.OPTS, 256L << 20);
+			// half the lower triangle of the kernel matrix
+			long n = dataSet.numInstances();
+			check(file, "linear, over budget", dataSet, SmoBenchmark.OPTS, 4 * n * (n + 1) / 2);
+			check(file, "linear, no cache", dataSet, SmoBenchmark.OPTS, 0);
+			check(file, "quadratic", dataSet, QUADRATIC, 1L << 20);
+		}
+		System.out.println("OK");
+	}
+
+	private static void check(String file, String name, Instances dataSet, String options, long budget) throws Exception {
+		SMO svm = new SMO();
+		svm.setOptions(Utils.splitOptions(options));
+		svm.buildClassifier(dataSet);
+		FastSMO fast = new FastSMO();
+		fast.setOptions(Utils.splitOptions(options));
+		fast.setCacheBudget(budget);
+		fast.buildClassifier(dataSet);
+
+		if (!withoutKernelStatistics(svm.toString()).equals(withoutKernelStatistics(fast.toString()))) {
+			throw new AssertionError(file + " (" + name + "): the printed models differ");
+		}
+		Object[][] machines = (Object[][]) field(SMO.class, "m_classifiers").get(svm);
+		Object[][] fastMachines = (Object[][]) field(SMO.class, "m_classifiers").get(fast);
+		for (int i = 0; i < machines.length; i++) {
+			for (int j = i + 1; j < machines[i].length; j++) {
+				for (String weights : new String[] {"m_b", "m_sparseWeights", "m_sparseIndices", "m_weights"}) {
+					Field f = field(machines[i][j].getClass(), weights);
+					if (!Arrays.deepEquals(new Object[] {f.get(machines[i][j])}, new Object[] {f.get(fastMachines[i][j])})) {
+						throw new AssertionError(file + " (" + name + "): " + weights + " differs");
+					}
+				}
+			}
+		}
+		for (int i = 0; i < dataSet.numInstances(); i++) {
+			if (!Arrays.equals(svm.distributionForInstance(dataSet.instance(i)), fast.distributionForInstance(dataSet.instance(i)))) {
+				throw new AssertionError(file + " (" + name + "): the predictions of row " + (i + 1) + " differ");
+			}
+		}
+		System.out.println(file + " (" + name + "): same model");
+	}
+
+	private static String withoutKernelStatistics(String model) {
+		return model.replaceAll("(?m)^Number of kernel evaluations:.*$", "");
+	}
+
+	private static Field field(Class<?> cls, String name) throws NoSuchFieldException {
+		while (true) {
+			try {
+				Field f = cls.getDeclaredField(name);
+				f.setAccessible(true);
+				return f;
+			} catch (NoSuchFieldException e) {
+				if (cls.getSuperclass() == null) {
+					throw e;
+				}
+				cls = cls.getSuperclass();
+			}
+		}
+	}
+
+}
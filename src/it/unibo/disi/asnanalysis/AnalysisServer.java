@@ -0,0 +1,318 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server that runs the analyses on demand in a long-running JVM
+ * (-op Serve -port N), so that a request does not pay for starting the JVM,
+ * loading the dataset and compiling the classifiers.
+ *
+ * The endpoints answer with the CSV that the corresponding operation writes
+ * to its output file:
+ * <pre>
+ * GET /rf?level=1[&amp;input=FILE]
+ * GET /area?level=1[&amp;input=FILE]
+ * GET /featuresel?level=1[&amp;input=FILE]
+ * GET /experiment1[?input=FOLDER]
+ * GET /experiment2[?input=FOLDER]
+ * GET /datasets     (the inputs kept in memory)
+ * GET /stats        (requests, errors, p50 and p99 latency of the successful
+ *                   requests of each endpoint)
+ * </pre>
+ * The default input is the one given with -i; the other inputs must be inside
+ * the working directory of the server. The datasets are kept in memory by a
+ * DatasetRegistry once loaded.
+ *
+ * The server listens on the loopback interface unless another address is
+ * given (-bind), since it runs the analyses for anyone who can reach it.
+ *
+ * The requests are run by a fixed pool of workers (-workers) with a bounded
+ * queue: when the queue is full, the server answers 503 at once. The groups
+ * and the folds of the running requests share the threads of the analyses
+ * (-threads).
+ */
+public class AnalysisServer {
+
+	// the requests waiting for a worker, per worker
+	private static final int QUEUE_PER_WORKER = 8;
+
+	// the latencies kept per endpoint for the percentiles
+	private static final int LATENCY_SAMPLES = 1024;
+
+	private static final String[] ANALYSES = {"rf", "area", "featuresel", "experiment1", "experiment2"};
+
+	private final HttpServer server;
+	private final ExecutorService dispatcher;
+	private final ThreadPoolExecutor workers;
+	private final DatasetRegistry registry = new DatasetRegistry();
+	private final String defaultInput;
+	private final File root;
+	private final Map<String, Latency> latencies = new LinkedHashMap<String, Latency>();
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+
+	/**
+	 * @param bindAddress the address of the interface to listen on
+	 */
+	public AnalysisServer(String bindAddress, int port, int numWorkers, String defaultInput) throws IOException {
+		this.defaultInput = defaultInput;
+		this.root = new File(".").getCanonicalFile();
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(bindAddress), port), 0);
+		this.dispatcher = Executors.newCachedThreadPool(daemonThreads("asn-http-"));
+		this.workers = new ThreadPoolExecutor(numWorkers, numWorkers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_PER_WORKER * numWorkers), daemonThreads("asn-server-"));
+		server.setExecutor(dispatcher);
+
+		for (String analysis : ANALYSES) {
+			latencies.put(analysis, new Latency());
+			server.createContext("/" + analysis, exchange -> handle(exchange, analysis));
+		}
+		server.createContext("/datasets", exchange -> {
+			MyRecordList rl = new MyRecordList();
+			rl.setHeader("Input");
+			for (String input : registry.inputs()) {
+				rl.addRecord(input);
+			}
+			send(exchange, 200, csv(rl));
+		});
+		server.createContext("/stats", exchange -> send(exchange, 200, csv(stats())));
+	}
+
+	public void start() {
+		AsnAnalysis.registry = registry;
+		server.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+	}
+
+	/**
+	 * Stops accepting requests and deletes the temporary files of the registry.
+	 */
+	public synchronized void stop() {
+		if (stopped.getCount() == 0) {
+			return;
+		}
+		server.stop(0);
+		workers.shutdownNow();
+		dispatcher.shutdownNow();
+		try {
+			registry.close();
+		} catch (IOException e) {
+			AsnAnalysis.LOG.info("Warning: " + e);
+		}
+		stopped.countDown();
+	}
+
+	/**
+	 * Waits until the server is stopped.
+	 */
+	public void awaitStop() throws InterruptedException {
+		stopped.await();
+	}
+
+	private void handle(HttpExchange exchange, String analysis) throws IOException {
+		long start = System.nanoTime();
+		int status;
+		String body;
+		try {
+			if (!exchange.getRequestMethod().equals("GET")) {
+				throw new UnsupportedOperationException("Only GET requests are allowed");
+			}
+			Callable<MyRecordList> task = analysis(analysis, query(exchange.getRequestURI().getRawQuery()));
+			Future<MyRecordList> result = workers.submit(() -> {
+				try {
+					return task.call();
+				} finally {
+					RunReport.setGroup(null);
+				}
+			});
+			body = csv(result.get());
+			status = 200;
+		} catch (UnsupportedOperationException e) {
+			status = 405;
+			body = e.getMessage() + "\n";
+		} catch (IllegalArgumentException e) {
+			status = 400;
+			body = e.getMessage() + "\n";
+		} catch (FileNotFoundException e) {
+			status = 404;
+			body = e.getMessage() + "\n";
+		} catch (RejectedExecutionException e) {
+			status = 503;
+			body = "Too many requests\n";
+		} catch (ExecutionException | InterruptedException e) {
+			Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+			AsnAnalysis.LOG.info("Error: " + exchange.getRequestURI() + ": " + cause);
+			status = cause instanceof FileNotFoundException ? 404 : 500;
+			body = cause + "\n";
+		} catch (Exception e) {
+			AsnAnalysis.LOG.info("Error: " + exchange.getRequestURI() + ": " + e);
+			status = 500;
+			body = e + "\n";
+		}
+		latencies.get(analysis).add(System.nanoTime() - start, status == 200);
+		send(exchange, status, body);
+	}
+
+	/**
+	 * The task computing the rows of an analysis, after checking its
+	 * parameters.
+	 */
+	private Callable<MyRecordList> analysis(String analysis, Map<String, String> params) throws IOException {
+		String input = input(params.get("input"));
+		if (analysis.startsWith("experiment")) {
+			if (!new File(input).isDirectory()) {
+				throw new FileNotFoundException("The input folder does not exist: " + input);
+			}
+			if (analysis.equals("experiment1")) {
+				return () -> AsnAnalysis.experiment1(input);
+			}
+			return () -> AsnAnalysis.experiment2(input);
+		}
+
+		if (!new File(input).isFile()) {
+			throw new FileNotFoundException("The input file does not exist: " + input);
+		}
+		String levelArg = params.get("level") == null ? "1" : params.get("level");
+		if (!levelArg.equals("1") && !levelArg.equals("2")) {
+			throw new IllegalArgumentException("Only levels \"1\" and \"2\" are allowed");
+		}
+		int level = Integer.parseInt(levelArg);
+		switch (analysis) {
+			case "rf":
+				return () -> AsnAnalysis.svmRFsLevel(registry.partition(input), level);
+			case "area":
+				return () -> AsnAnalysis.svmAreas(registry.partition(input), level);
+			default:
+				return () -> AsnAnalysis.featureSel(registry.partition(input), level);
+		}
+	}
+
+	/**
+	 * The canonical path of an input, that must be inside the working
+	 * directory unless it is the default input.
+	 */
+	private String input(String input) throws IOException {
+		if (input == null) {
+			return new File(defaultInput).getCanonicalPath();
+		}
+		File file = new File(root, input).getCanonicalFile();
+		if (!file.toPath().startsWith(root.toPath())) {
+			throw new IllegalArgumentException("The input must be inside " + root);
+		}
+		return file.getPath();
+	}
+
+	private MyRecordList stats() {
+		MyRecordList rl = new MyRecordList();
+		rl.setHeader("Endpoint", "Requests", "Errors", "p50 (ms)", "p99 (ms)");
+		for (Map.Entry<String, Latency> e : latencies.entrySet()) {
+			Latency latency = e.getValue();
+			synchronized (latency) {
+				rl.addRecord("/" + e.getKey(), Long.toString(latency.count), Long.toString(latency.errors),
+						AsnAnalysis.roundDouble(latency.percentile(0.5) / 1e6), AsnAnalysis.roundDouble(latency.percentile(0.99) / 1e6));
+			}
+		}
+		return rl;
+	}
+
+	private static Map<String, String> query(String rawQuery) throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<String, String>();
+		if (rawQuery == null) {
+			return params;
+		}
+		for (String param : rawQuery.split("&")) {
+			int eq = param.indexOf('=');
+			if (eq > 0) {
+				params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"), URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	private static String csv(MyRecordList rl) throws IOException {
+		StringWriter out = new StringWriter();
+		rl.print(out);
+		return out.toString();
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", status == 200 ? "text/csv; charset=utf-8" : "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger counter = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, prefix + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+
+	/**
+	 * The latencies of the last successful requests of an endpoint (a ring
+	 * buffer), and the number of requests and errors since the start.
+	 */
+	private static class Latency {
+		final long[] samples = new long[LATENCY_SAMPLES];
+		long count;
+		long errors;
+
+		synchronized void add(long nanos, boolean ok) {
+			if (ok) {
+				samples[(int) ((count - errors) % samples.length)] = nanos;
+			} else {
+				errors++;
+			}
+			count++;
+		}
+
+		/**
+		 * The latency (in ns) below which the given fraction of the last
+		 * successful requests fall, 0 if none.
+		 */
+		synchronized double percentile(double p) {
+			int n = (int) Math.min(count - errors, samples.length);
+			if (n == 0) {
+				return 0;
+			}
+			long[] sorted = Arrays.copyOf(samples, n);
+			Arrays.sort(sorted);
+			return sorted[Math.max(0, (int) Math.ceil(p * n) - 1)];
+		}
+	}
+
+}
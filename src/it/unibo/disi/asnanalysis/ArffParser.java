@@ -0,0 +1,482 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ArffLoader;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Reader of the ARFF files with numeric and nominal attributes only (i.e. all
+ * the ASN datasets), that memory-maps the file and parses the rows of the
+ * data section directly into double arrays.
+ *
+ * The header is parsed by Weka. The rows are split into tokens with the same
+ * rules as the tokenizer of ArffLoader (blanks and commas separate tokens, an
+ * unquoted "?" is a missing value), numbers are converted with a scanner that
+ * gives the same double as Double.valueOf() (falling back to it for the
+ * numbers it cannot convert exactly), and nominal values are looked up as
+ * bytes in a dictionary of the values of each attribute. Each line is
+ * copied from the mapped file into a reused byte array before it is parsed.
+ * No object is allocated for a row, apart from the ones the caller keeps.
+ *
+ * Quoted nominal values are looked up in the same way, if they have no escape
+ * sequences. Non-ASCII values are looked up only if the default charset (the
+ * one of ArffLoader) is UTF-8, whose multi-byte characters never contain
+ * separators. The rows that use any other feature of the format (escapes,
+ * comments after the values, instance weights, sparse rows) and the
+ * malformed ones are parsed by ArffLoader, so that the values, and the errors,
+ * are the same as the ones of DataSource.getDataSet() (sparse rows are
+ * returned as dense rows, though).
+ */
+public class ArffParser implements Closeable {
+
+	// the size of the mapped windows of the file
+	private static final long WINDOW = 1L << 28;
+
+	// whether the default charset, used by ArffLoader, is UTF-8
+	private static final boolean UTF8 = Charset.defaultCharset().equals(StandardCharsets.UTF_8);
+
+	// the largest powers of ten that are exact doubles
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final File file;
+	private final FileChannel channel;
+	private final long size;
+	private final Instances structure;
+	private final int numAttributes;
+	private final boolean[] nominal;
+	private final byte[][][] labels;     // the values of each nominal attribute, as bytes (null if not encodable)
+	private final int[] lastLabel;       // the last value found for each nominal attribute
+
+	private MappedByteBuffer buf;
+	private long bufStart;
+	private int pos;
+	private int lineNo;
+	private byte[] line = new byte[1 << 12];  // the bytes of the line being parsed
+	private double number;
+	private double weight;
+
+
+	/**
+	 * Maps the given file and parses its header.
+	 */
+	public ArffParser(File file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			this.size = channel.size();
+			map(0);
+
+			// the header ends with the line that starts with "@data"
+			boolean data = false;
+			while (!data) {
+				int end = lineEnd(pos);
+				if (end < 0) {
+					throw new IOException("Keyword @data not found in " + file);
+				}
+				int p = pos;
+				while (p < end && buf.get(p) >= 0 && buf.get(p) <= ' ') {
+					p++;
+				}
+				data = end - p >= 5 && (end - p == 5 || buf.get(p + 5) >= 0 && buf.get(p + 5) <= ' ');
+				for (int i = 0; data && i < 5; i++) {
+					data = Character.toLowerCase((char) buf.get(p + i)) == "@data".charAt(i);
+				}
+				lineNo++;
+				pos = nextLine(end);
+			}
+			if (bufStart != 0) {
+				throw new IOException("The header of " + file + " is too long");
+			}
+			int start = pos;
+			byte[] header = new byte[start];
+			for (int i = 0; i < start; i++) {
+				header[i] = buf.get(i);
+			}
+			// ArffLoader reads the files with the default charset
+			ArffLoader.ArffReader reader = new ArffLoader.ArffReader(new StringReader(new String(header, Charset.defaultCharset())), 0, false);
+			this.structure = new Instances(reader.getStructure(), 0);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+
+		this.numAttributes = structure.numAttributes();
+		this.nominal = new boolean[numAttributes];
+		this.labels = new byte[numAttributes][][];
+		this.lastLabel = new int[numAttributes];
+		for (int i = 0; i < numAttributes; i++) {
+			Attribute attr = structure.attribute(i);
+			nominal[i] = attr.isNominal();
+			if (nominal[i]) {
+				labels[i] = new byte[attr.numValues()][];
+				for (int v = 0; v < attr.numValues(); v++) {
+					labels[i][v] = encode(attr.value(v));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether the rows of a dataset with the given header can be read by
+	 * this class, i.e. whether all its attributes are numeric or nominal.
+	 */
+	public static boolean supports(Instances header) {
+		for (int i = 0; i < header.numAttributes(); i++) {
+			if (!header.attribute(i).isNumeric() && !header.attribute(i).isNominal()
+					|| header.attribute(i).isDate()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Loads a dataset, as DataSource.getDataSet() does. The ARFF files with
+	 * attributes that are not numeric or nominal, and the files in other
+	 * formats, are loaded by DataSource.
+	 */
+	public static Instances load(String fileName) throws Exception {
+		if (!fileName.toLowerCase().endsWith(".arff")) {
+			return new DataSource(fileName).getDataSet();
+		}
+		try (ArffParser parser = new ArffParser(new File(fileName))) {
+			if (!supports(parser.getStructure())) {
+				return new DataSource(fileName).getDataSet();
+			}
+			Instances dataSet = new Instances(parser.getStructure(), 1000);
+			double[] values = new double[parser.numAttributes];
+			while (parser.next(values)) {
+				dataSet.add(new DenseInstance(parser.weight(), values));
+				values = new double[parser.numAttributes];
+			}
+			dataSet.compactify();
+			return dataSet;
+		}
+	}
+
+	/**
+	 * The attributes of the dataset (no rows).
+	 */
+	public Instances getStructure() {
+		return structure;
+	}
+
+	/**
+	 * Reads the next row into the given array, returning false at the end of
+	 * the file. Only for the datasets supported by this class.
+	 */
+	public boolean next(double[] values) throws IOException {
+		while (true) {
+			int end = lineEnd(pos);
+			if (end < 0) {
+				return false;
+			}
+			lineNo++;
+			int length = end - pos;
+			if (line.length < length) {
+				line = new byte[Math.max(length, 2 * line.length)];
+			}
+			((Buffer) buf).position(pos);
+			buf.get(line, 0, length);
+			int res = parseRow(0, length, values);
+			if (res < 0) {
+				res = parseRowWithWeka(length, values);
+			}
+			pos = nextLine(end);
+			if (res > 0) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * The weight of the last row read.
+	 */
+	public double weight() {
+		return weight;
+	}
+
+	/**
+	 * Parses a line of the data section: returns 1 for a row, 0 for a blank
+	 * or comment line, -1 if the line must be parsed by ArffLoader.
+	 */
+	private int parseRow(int start, int end, double[] values) {
+		int p = start;
+		int attr = 0;
+		while (true) {
+			while (p < end && isSeparator(line[p])) {
+				p++;
+			}
+			if (p == end) {
+				break;
+			}
+			byte quote = line[p];
+			if (quote == '\'' || quote == '"') {
+				// a quoted nominal value, without escapes
+				if (attr == numAttributes || !nominal[attr]) {
+					return -1;
+				}
+				int close = p + 1;
+				while (close < end && line[close] != quote && line[close] != '\\') {
+					close++;
+				}
+				if (close == end || line[close] != quote || close + 1 < end && !isSeparator(line[close + 1])) {
+					return -1;
+				}
+				int index = lookup(attr, p + 1, close);
+				if (index < 0) {
+					return -1;
+				}
+				values[attr++] = index;
+				p = close + 1;
+				continue;
+			}
+			int from = p;
+			while (p < end && !isSeparator(line[p])) {
+				byte b = line[p];
+				if (b == '%' && p == from && attr == 0) {
+					return 0;
+				}
+				if (b == '\'' || b == '"' || b == '{' || b == '}' || b == '%' || b < 0 && !UTF8) {
+					return -1;
+				}
+				p++;
+			}
+			if (attr == numAttributes) {
+				return -1;
+			}
+			if (p - from == 1 && line[from] == '?') {
+				values[attr] = Utils.missingValue();
+			} else if (nominal[attr]) {
+				int index = lookup(attr, from, p);
+				if (index < 0) {
+					return -1;
+				}
+				values[attr] = index;
+			} else {
+				if (!parseNumber(from, p)) {
+					return -1;
+				}
+				values[attr] = number;
+			}
+			attr++;
+		}
+		if (attr == 0) {
+			return 0;
+		}
+		if (attr < numAttributes) {
+			return -1;
+		}
+		weight = 1.0;
+		return 1;
+	}
+
+	private int parseRowWithWeka(int length, double[] values) throws IOException {
+		ArffLoader.ArffReader reader = new ArffLoader.ArffReader(new StringReader(new String(line, 0, length, Charset.defaultCharset())), structure, lineNo - 1, 1);
+		Instance inst = reader.readInstance(structure);
+		if (inst == null) {
+			return 0;
+		}
+		for (int i = 0; i < numAttributes; i++) {
+			values[i] = inst.value(i);
+		}
+		weight = inst.weight();
+		return 1;
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b >= 0 && b <= ' ' || b == ',';
+	}
+
+	/**
+	 * The index of the value of a nominal attribute, or -1.
+	 */
+	private int lookup(int attr, int from, int to) {
+		byte[][] values = labels[attr];
+		int last = lastLabel[attr];
+		if (last < values.length && matches(values[last], from, to)) {
+			return last;
+		}
+		for (int v = 0; v < values.length; v++) {
+			if (matches(values[v], from, to)) {
+				lastLabel[attr] = v;
+				return v;
+			}
+		}
+		return -1;
+	}
+
+	private boolean matches(byte[] label, int from, int to) {
+		if (label == null || label.length != to - from) {
+			return false;
+		}
+		for (int i = 0; i < label.length; i++) {
+			if (label[i] != line[from + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Converts a number, as Double.valueOf() does. The numbers with at most 15
+	 * significant digits and a decimal exponent between -22 and 22 are
+	 * converted with a single (correctly rounded) multiplication or division
+	 * of two exact doubles, the other ones by Double.valueOf().
+	 */
+	private boolean parseNumber(int from, int to) {
+		int p = from;
+		boolean negative = false;
+		if (line[p] == '-' || line[p] == '+') {
+			negative = line[p] == '-';
+			p++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int numDigits = 0;
+		int exponent = 0;
+		boolean point = false;
+		for (; p < to; p++) {
+			byte b = line[p];
+			if (b >= '0' && b <= '9') {
+				numDigits++;
+				if (mantissa != 0 || b != '0') {
+					digits++;
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (point) {
+					exponent--;
+				}
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (p < to && numDigits > 0 && (line[p] == 'e' || line[p] == 'E')) {
+			p++;
+			boolean negativeExp = false;
+			if (p < to && (line[p] == '-' || line[p] == '+')) {
+				negativeExp = line[p] == '-';
+				p++;
+			}
+			int exp = 0;
+			int expDigits = 0;
+			for (; p < to && line[p] >= '0' && line[p] <= '9' && expDigits < 4; p++) {
+				exp = exp * 10 + (line[p] - '0');
+				expDigits++;
+			}
+			if (expDigits == 0) {
+				p = -1;
+			}
+			exponent += negativeExp ? -exp : exp;
+		}
+		if (p == to && numDigits > 0 && digits <= 15 && exponent >= -22 && exponent <= 22) {
+			double value = mantissa;
+			value = exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value / POWERS_OF_TEN[-exponent];
+			number = negative ? -value : value;
+			return true;
+		}
+		byte[] token = new byte[to - from];
+		for (int i = 0; i < token.length; i++) {
+			token[i] = line[from + i];
+		}
+		try {
+			number = Double.valueOf(new String(token, StandardCharsets.US_ASCII));
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * The end (exclusive) of the line that starts at the given position of the
+	 * mapped window, or -1 at the end of the file. The window is moved forward
+	 * if the line does not fit in it.
+	 */
+	private int lineEnd(int start) throws IOException {
+		while (true) {
+			int limit = buf.limit();
+			for (int p = start; p < limit; p++) {
+				byte b = buf.get(p);
+				if (b == '\n' || b == '\r') {
+					return p;
+				}
+			}
+			if (bufStart + limit == size) {
+				return start < limit ? limit : -1;
+			}
+			if (start == 0) {
+				throw new IOException("Line " + (lineNo + 1) + " of " + file + " is too long");
+			}
+			long lineStart = bufStart + start;
+			map(lineStart);
+			pos = 0;
+			start = 0;
+		}
+	}
+
+	/**
+	 * The start of the line that follows the end of a line.
+	 */
+	private int nextLine(int end) throws IOException {
+		if (end < buf.limit() && buf.get(end) == '\r') {
+			end++;
+			if (end == buf.limit() && bufStart + end < size) {
+				map(bufStart + end);
+				pos = 0;
+				end = 0;
+			}
+			if (end < buf.limit() && buf.get(end) == '\n') {
+				end++;
+			}
+			return end;
+		}
+		return end < buf.limit() ? end + 1 : end;
+	}
+
+	private void map(long start) throws IOException {
+		bufStart = start;
+		buf = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+	}
+
+	/**
+	 * The bytes of a nominal value in the data section, or null if they
+	 * cannot be matched byte by byte.
+	 */
+	private static byte[] encode(String s) {
+		byte[] res = s.getBytes(UTF8 ? StandardCharsets.UTF_8 : StandardCharsets.US_ASCII);
+		if (!new String(res, UTF8 ? StandardCharsets.UTF_8 : StandardCharsets.US_ASCII).equals(s)) {
+			return null;
+		}
+		return res;
+	}
+
+	@Override
+	public void close() throws IOException {
+		buf = null;
+		channel.close();
+	}
+
+}
@@ -5,6 +5,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -16,17 +17,21 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.QuoteMode;
-import org.apache.commons.lang3.StringUtils;
 
 import weka.attributeSelection.BestFirst;
 import weka.attributeSelection.CfsSubsetEval;
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.classifiers.evaluation.Prediction;
 import weka.classifiers.functions.Logistic;
@@ -34,25 +39,130 @@ import weka.classifiers.functions.SMO;
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Statistics;
 import weka.core.Utils;
-import weka.core.converters.ConverterUtils.DataSource;
 import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Remove;
-import weka.filters.unsupervised.instance.RemoveWithValues;
 
 public class AsnAnalysis {
 
 	static final Logger LOG = Logger.getLogger("eu.emc2.bugs.weka.AsnAnalysis");
+	
+	static GroupExecutor executor = new GroupExecutor(1);
+	
+	static boolean useCache = true;
+	
+	static ResultCache resultCache = null;
+	
+	static long kernelCacheMB = 256;
+	
+	// the Gram matrix shared by the folds of a group (-gram): null (none), "double" or "float"
+	static String gramStorage = null;
+	
+	static boolean streamInput = false;
+	
+	static int serverPort = 8080;
+	
+	// the address of the interface the worker of -op Worker listens on
+	static String bindAddress = "127.0.0.1";
+	
+	static int serverWorkers = 2;
+	
+	static DatasetRegistry registry = null;
+	
+	static ModelStore modelStore = null;
+	
+	// the workers of the cross-validations (-nodes), null to run them locally
+	static Coordinator coordinator = null;
+	
+	// the time (in seconds) a worker may take to cross-validate a group
+	static int nodeTimeout = 1800;
+	
+	static boolean columnarOutput = false;
+	
+	// the cross-validations (seeds 1..cvRepeats) of each RF/Area
+	static int cvRepeats = 1;
+	
+	// the grid of -op Tune
+	static double[] gridC = {0.1, 1.0, 10.0};
+	
+	static double[] gridExponent = {1.0, 2.0};
+	
+	static double[] gridRidge = {1.0E-8, 1.0E-4, 1.0E-1};
+	
+	// the folds evaluated by every configuration of the grid before it can be abandoned
+	static int tuneMinFolds = 3;
+	
+	// the nested cross-validation of the selection of -op Tune
+	static boolean tuneNested = false;
+	
+	// the largest number of top features of -op FeatureCurve
+	static int curveMaxK = 50;
+	
+	// the linear model and the epochs of SGD of -op Screen
+	static SgdScreen.Loss screenLoss = SgdScreen.Loss.HINGE;
+	
+	static int screenEpochs = 5;
+	
+	// the rank of the cut-off of -op Screen around which the RFs are analysed exactly, 0 for none
+	static int refineRank = 0;
+	
+	static int refineWidth = 5;
+	
+	static final String JOB_SEPARATOR = "---";
+	
+	// the options a job can set after a "---", the other ones are shared by all the jobs
+	static final List<String> JOB_OPTIONS = Arrays.asList("-i", "-o", "-op", "-l");
+	
+	// the shared options without a value
+	static final List<String> FLAG_OPTIONS = Arrays.asList("-nocache", "-stream", "-columnar", "-nested");
+	
+	static final String OPTS_SVM = svmOptions(1.0, 1.0); // -x 10 -v -o -c";
+	
+	static final String OPTS_LOGISTIC = logisticOptions(1.0E-8);
+	
+	static final String SVM_SPEC = SMO.class.getName() + " " + OPTS_SVM;
+	
+	static final String LOGISTIC_SPEC = Logistic.class.getName() + " " + OPTS_LOGISTIC;
+	
+	/*
+	 * Experiment #1: RFs 01/B1 (Informatics) and 13/A1 (Economics), Areas 01
+	 * (Mathematics and Computer Science) and 13 (Economics and Statistics)
+	 */
+	static final List<ExperimentPipeline.Step> EXPERIMENT1 = Arrays.asList(
+			new ExperimentPipeline.Step("01/B1", "JLOG-1", "01B1_jensen1.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("01/B1", "JLOG-8", "01B1_jensen8.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("01/B1", "SVM", "01B1_svm.arff", ExperimentPipeline.Learner.SVM),
+			new ExperimentPipeline.Step("13/A1", "JLOG-1", "13A1_jensen1.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("13/A1", "JLOG-8", "13A1_jensen8.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("13/A1", "SVM", "13A1_svm.arff", ExperimentPipeline.Learner.SVM),
+			new ExperimentPipeline.Step("01", "JLOG-1", "01_jensen1.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("01", "JLOG-8", "01_jensen8.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("01", "SVM", "01_svm.arff", ExperimentPipeline.Learner.SVM),
+			new ExperimentPipeline.Step("13", "JLOG-1", "13_jensen1.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("13", "JLOG-8", "13_jensen8.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("13", "SVM", "13_svm.arff", ExperimentPipeline.Learner.SVM));
+	
+	/*
+	 * Experiment #2: RFs 05/E2 (Molecular biology) and 13/A1 (Economics)
+	 */
+	static final List<ExperimentPipeline.Step> EXPERIMENT2 = Arrays.asList(
+			new ExperimentPipeline.Step("05/E2", "T-LR", "05E2_tregella.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("05/E2", "T-SVM", "05E2_tregella.arff", ExperimentPipeline.Learner.SVM),
+			new ExperimentPipeline.Step("05/E2", "OUR-SVM", "05E2_svm.arff", ExperimentPipeline.Learner.SVM),
+			new ExperimentPipeline.Step("13/A1", "T-LR", "13A1_tregella.arff", ExperimentPipeline.Learner.LOGISTIC),
+			new ExperimentPipeline.Step("13/A1", "T-SVM", "13A1_tregella.arff", ExperimentPipeline.Learner.SVM),
+			new ExperimentPipeline.Step("13/A1", "OUR-SVM", "13A1_svm.arff", ExperimentPipeline.Learner.SVM));
 
 	public static void main(String[] args) throws Exception {
 		System.setProperty("java.util.logging.SimpleFormatter.format", "%5$s%6$s%n");
 
-		String input = "dataset-ASN-2012.arff";
-		String output = "output.csv";
-		String operation = "RF";
-		int level = 1; 
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		
+		// -optfile optfilename || -i input -o output -op operation -l numLevel [-threads numThreads] [-nocache] [-resultcache cacheDir] [-kernelcache MB] [-gram double|float] [-stream] [-port N] [-bind address] [-workers N] [-nodes host:port,...] [-nodetimeout S] [-models modelDir] [-repeat N] [-curvek K] [-screen svm|logistic] [-epochs N] [-refine rank[,width]] [-columnar] [-gridC c1,c2,...] [-gridE e1,e2,...] [-gridR r1,r2,...] [-nested]
 		
-		// -optfile optfilename || -i input -o output -op operation -l numLevel
+		// In an optfile, the lines "---" separate several jobs, which are run in
+		// the same JVM: the options that precede the first "---" are shared by
+		// all the jobs, and a job can only set -i, -o, -op and -l.
 		
 		if(args.length > 0 && args[0].equals("-optfile")) {
 			List<String> lines = new ArrayList<>();
@@ -65,54 +175,388 @@ public class AsnAnalysis {
 							lines.add(line.substring(0, spaceIdx));
 							lines.add(line.substring(spaceIdx+1));
 						} else {
-							lines.add(line);
+							lines.add(line.trim());
 						}
 					}
 				}
 			}
 			args = lines.toArray(new String[0]);
 		}
-		for(int i = 0; i < args.length; i++) {
-			if(args[i].equals("-i")) { //classifier
+		
+		List<List<String>> blocks = new ArrayList<List<String>>();
+		blocks.add(new ArrayList<String>());
+		for (String arg : args) {
+			if (arg.equals(JOB_SEPARATOR)) {
+				blocks.add(new ArrayList<String>());
+			} else {
+				blocks.get(blocks.size() - 1).add(arg);
+			}
+		}
+		
+		Job common = new Job();
+		numThreads = parseArgs(blocks.get(0), common, numThreads);
+		List<Job> jobs = new ArrayList<Job>();
+		if (blocks.size() == 1) {
+			jobs.add(common);
+		}
+		for (int b = 1; b < blocks.size(); b++) {
+			Job job = common.copy();
+			parseArgs(jobArgs(blocks.get(b)), job, numThreads);
+			jobs.add(job);
+		}
+		
+		executor = new GroupExecutor(numThreads);
+		try {
+			runJobs(jobs);
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	
+	/**
+	 * Parses the options of a job and returns the number of threads.
+	 */
+	private static int parseArgs(List<String> args, Job job, int numThreads) throws IOException {
+		for(int i = 0; i < args.size(); i++) {
+			if(args.get(i).equals("-i")) { //classifier
 				i++;
-				input = args[i];
-			} else if(args[i].equals("-o")) { //pre-filters
+				job.input = args.get(i);
+			} else if(args.get(i).equals("-o")) { //pre-filters
 				i++;
-				output = args[i];
-			} else if(args[i].equals("-op")) { //loop filters
+				job.output = args.get(i);
+			} else if(args.get(i).equals("-op")) { //loop filters
 				i++;
-				operation = args[i];
-			} else if(args[i].equals("-l")) { //boot filters
+				job.operation = args.get(i);
+			} else if(args.get(i).equals("-l")) { //boot filters
 				i++;
-				String levelArg = args[i];
+				String levelArg = args.get(i);
 				if (levelArg.equals("1") || levelArg.equals("2")) {
-					level = Integer.parseInt(levelArg);
+					job.level = Integer.parseInt(levelArg);
 				} else {
 					LOG.info("Error: only levels \"1\" and \"2\" are allowed.");
 				}
+			} else if(args.get(i).equals("-threads")) {
+				i++;
+				try {
+					numThreads = Integer.parseInt(args.get(i));
+				} catch (NumberFormatException e) {
+					LOG.info("Error: the number of threads must be an integer.");
+				}
+				if (numThreads < 1) {
+					LOG.info("Error: the number of threads must be greater than 0.");
+					numThreads = 1;
+				}
+			} else if(args.get(i).equals("-nocache")) {
+				useCache = false;
+			} else if(args.get(i).equals("-resultcache")) {
+				i++;
+				resultCache = new ResultCache(new File(args.get(i)));
+			} else if(args.get(i).equals("-stream")) {
+				streamInput = true;
+			} else if(args.get(i).equals("-port")) {
+				i++;
+				try {
+					serverPort = Integer.parseInt(args.get(i));
+				} catch (NumberFormatException e) {
+					LOG.info("Error: the port must be an integer.");
+				}
+			} else if(args.get(i).equals("-bind")) {
+				i++;
+				bindAddress = args.get(i);
+			} else if(args.get(i).equals("-workers")) {
+				i++;
+				try {
+					serverWorkers = Integer.parseInt(args.get(i));
+				} catch (NumberFormatException e) {
+					LOG.info("Error: the number of workers must be an integer.");
+				}
+				if (serverWorkers < 1) {
+					LOG.info("Error: the number of workers must be greater than 0.");
+					serverWorkers = 1;
+				}
+			} else if(args.get(i).equals("-nodes")) {
+				i++;
+				coordinator = new Coordinator(Arrays.asList(args.get(i).split(",")), nodeTimeout * 1000);
+			} else if(args.get(i).equals("-nodetimeout")) {
+				i++;
+				try {
+					nodeTimeout = Integer.parseInt(args.get(i));
+				} catch (NumberFormatException e) {
+					LOG.info("Error: the timeout of the workers must be an integer.");
+				}
+				if (nodeTimeout < 1) {
+					LOG.info("Error: the timeout of the workers must be greater than 0.");
+					nodeTimeout = 1800;
+				}
+				if (coordinator != null) {
+					coordinator.setRequestTimeout(nodeTimeout * 1000);
+				}
+			} else if(args.get(i).equals("-models")) {
+				i++;
+				modelStore = new ModelStore(new File(args.get(i)));
+			} else if(args.get(i).equals("-columnar")) {
+				columnarOutput = true;
+			} else if(args.get(i).equals("-nested")) {
+				tuneNested = true;
+			} else if(args.get(i).equals("-repeat")) {
+				i++;
+				try {
+					cvRepeats = Integer.parseInt(args.get(i));
+				} catch (NumberFormatException e) {
+					LOG.info("Error: the number of repetitions must be an integer.");
+				}
+				if (cvRepeats < 1) {
+					LOG.info("Error: the number of repetitions must be greater than 0.");
+					cvRepeats = 1;
+				}
+			} else if(args.get(i).equals("-curvek")) {
+				i++;
+				try {
+					curveMaxK = Integer.parseInt(args.get(i));
+				} catch (NumberFormatException e) {
+					LOG.info("Error: the number of features must be an integer.");
+				}
+				if (curveMaxK < 1) {
+					LOG.info("Error: the number of features must be greater than 0.");
+					curveMaxK = 50;
+				}
+			} else if(args.get(i).equals("-screen")) {
+				i++;
+				if (args.get(i).equals("svm")) {
+					screenLoss = SgdScreen.Loss.HINGE;
+				} else if (args.get(i).equals("logistic")) {
+					screenLoss = SgdScreen.Loss.LOG;
+				} else {
+					LOG.info("Error: the model of -op Screen must be \"svm\" or \"logistic\".");
+				}
+			} else if(args.get(i).equals("-epochs")) {
+				i++;
+				try {
+					screenEpochs = Integer.parseInt(args.get(i));
+				} catch (NumberFormatException e) {
+					LOG.info("Error: the number of epochs must be an integer.");
+				}
+				if (screenEpochs < 1) {
+					LOG.info("Error: the number of epochs must be greater than 0.");
+					screenEpochs = 5;
+				}
+			} else if(args.get(i).equals("-refine")) {
+				i++;
+				String[] refine = args.get(i).split(",");
+				try {
+					refineRank = Integer.parseInt(refine[0]);
+					if (refine.length > 1) {
+						refineWidth = Integer.parseInt(refine[1]);
+					}
+				} catch (NumberFormatException e) {
+					LOG.info("Error: the cut-off of -refine must be an integer (optionally followed by the width).");
+				}
+				if (refineRank < 0 || refineWidth < 1) {
+					LOG.info("Error: the cut-off of -refine must be positive, and the width greater than 0.");
+					refineRank = 0;
+					refineWidth = 5;
+				}
+			} else if(args.get(i).equals("-gridC")) {
+				i++;
+				gridC = parseGrid(args.get(i), gridC);
+			} else if(args.get(i).equals("-gridE")) {
+				i++;
+				gridExponent = parseGrid(args.get(i), gridExponent);
+			} else if(args.get(i).equals("-gridR")) {
+				i++;
+				gridRidge = parseGrid(args.get(i), gridRidge);
+			} else if(args.get(i).equals("-gram")) {
+				i++;
+				if (args.get(i).equals("double") || args.get(i).equals("float")) {
+					gramStorage = args.get(i);
+				} else {
+					LOG.info("Error: the values of the Gram matrix must be \"double\" or \"float\".");
+				}
+			} else if(args.get(i).equals("-kernelcache")) {
+				i++;
+				try {
+					kernelCacheMB = Long.parseLong(args.get(i));
+				} catch (NumberFormatException e) {
+					LOG.info("Error: the size of the kernel cache must be an integer.");
+				}
+				if (kernelCacheMB < 0) {
+					LOG.info("Error: the size of the kernel cache must not be negative.");
+					kernelCacheMB = 256;
+				}
+			}
+		}
+		return numThreads;
+	}
+	
+	
+	/**
+	 * The options of a job after a "---" that it can set (JOB_OPTIONS): the
+	 * other ones are shared by all the jobs (the statics of this class, the
+	 * thread pool), hence ignored with an error.
+	 */
+	private static List<String> jobArgs(List<String> args) {
+		List<String> res = new ArrayList<String>();
+		for (int i = 0; i < args.size(); i++) {
+			String arg = args.get(i);
+			if (JOB_OPTIONS.contains(arg)) {
+				res.add(arg);
+				if (i + 1 < args.size()) {
+					res.add(args.get(++i));
+				}
+			} else if (arg.startsWith("-")) {
+				LOG.info("Error: the option " + arg + " is shared by all the jobs and must precede the first " + JOB_SEPARATOR + ", it is ignored.");
+				if (!FLAG_OPTIONS.contains(arg)) {
+					i++;
+				}
+			}
+		}
+		return res;
+	}
+	
+	
+	/**
+	 * Parses a comma-separated list of values of a parameter of -op Tune, or
+	 * returns the default values if it is not valid.
+	 */
+	private static double[] parseGrid(String arg, double[] defaultValues) {
+		String[] values = arg.split(",");
+		double[] res = new double[values.length];
+		try {
+			for (int i = 0; i < values.length; i++) {
+				res[i] = Double.parseDouble(values[i].trim());
 			}
+		} catch (NumberFormatException e) {
+			LOG.info("Error: the values of a grid must be comma-separated numbers.");
+			return defaultValues;
 		}
+		return res;
+	}
+	
+	
+	/**
+	 * Runs the jobs concurrently. Each distinct input of the RF, Area and
+	 * FeatureSel jobs is loaded and partitioned once, and shared by all the
+	 * jobs that read it (e.g. level 1 and level 2). The groups and folds of
+	 * all the jobs are scheduled on the same thread pool. With -stream, the
+	 * inputs are partitioned while they are read and their rows are kept in
+	 * temporary files until the jobs end (see SpilledPartition).
+	 */
+	private static void runJobs(List<Job> jobs) throws Exception {
+		HashMap<String, DatasetPartition> partitions = new HashMap<String, DatasetPartition>();
+		try {
+			runJobs(jobs, partitions);
+		} finally {
+			for (DatasetPartition partition : partitions.values()) {
+				if (partition instanceof SpilledPartition) {
+					((SpilledPartition) partition).close();
+				}
+			}
+		}
+	}
+	
+	
+	@SuppressWarnings("try")
+	private static void runJobs(List<Job> jobs, HashMap<String, DatasetPartition> partitions) throws Exception {
+		RunReport loadReport = new RunReport();
+		RunReport.setCurrent(loadReport);
+		for (Job job : jobs) {
+			if (job.usesDataSet() && !partitions.containsKey(job.input)) {
+				RunReport.setGroup(job.input);
+				if (streamInput) {
+					// Group the rows by RF (column 2) and level (column 3) while reading them
+					try (RunReport.Timer t = RunReport.time("load")) {
+						partitions.put(job.input, SpilledPartition.load(job.input, 1, 2));
+					}
+					continue;
+				}
+				Instances dataSet = loadDataSet(job.input);
+				// Group the rows by RF (column 2) and level (column 3)
+				try (RunReport.Timer t = RunReport.time("partition")) {
+					partitions.put(job.input, new DatasetPartition(dataSet, 1, 2));
+				}
+			}
+		}
+		RunReport.setCurrent(null);
+		RunReport.setGroup(null);
 		
-		switch (operation) {
+		if (jobs.size() == 1) {
+			runOperation(jobs.get(0), partitions, loadReport);
+			return;
+		}
+		
+		// the job threads only wait for the tasks submitted to the shared pool
+		ExecutorService jobRunner = Executors.newFixedThreadPool(jobs.size());
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (Job job : jobs) {
+				futures.add(jobRunner.submit(() -> {
+					runOperation(job, partitions, loadReport);
+					return null;
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			jobRunner.shutdownNow();
+		}
+	}
+	
+	
+	/**
+	 * Runs a job and saves its timing report next to its output.
+	 */
+	@SuppressWarnings("try")
+	private static void runOperation(Job job, HashMap<String, DatasetPartition> partitions, RunReport loadReport) throws Exception {
+		RunReport report = new RunReport();
+		report.addAll(loadReport, job.input);
+		RunReport.setCurrent(report);
+		try (RunReport.Timer t = RunReport.time("job")) {
+			runOperation(job, partitions);
+		} finally {
+			RunReport.setCurrent(null);
+			RunReport.setGroup(null);
+		}
+		report.save(job.output);
+	}
+	
+	
+	private static void runOperation(Job job, HashMap<String, DatasetPartition> partitions) throws Exception {
+		String input = job.input;
+		String output = job.output;
+		int level = job.level;
+		switch (job.operation) {
 			case "RF":
 				{
-					DataSource dataSource = new DataSource(input);
-					Instances dataSet = dataSource.getDataSet();
-					svmRFsLevel(dataSet, output, level);
+					svmRFsLevel(partitions.get(input), output, level, checkpointFingerprint(job));
 					break;
 				}
 			case "Area":
 				{
-					DataSource dataSource = new DataSource(input);
-					Instances dataSet = dataSource.getDataSet();
-					svmAreas(dataSet, output, level);
+					svmAreas(partitions.get(input), output, level, checkpointFingerprint(job));
 					break;
 				}
 			case "FeatureSel":
 				{
-					DataSource dataSource = new DataSource(input);
-					Instances dataSet = dataSource.getDataSet();
-					featureSel(dataSet, output, level);
+					featureSel(partitions.get(input), output, level, checkpointFingerprint(job));
+					break;
+				}
+			case "Screen":
+				{
+					save(screenRFsLevel(partitions.get(input), level, MyRecordList.streaming(output, checkpointFingerprint(job))), output);
+					break;
+				}
+			case "FeatureCurve":
+				{
+					save(featureCurve(partitions.get(input), level, MyRecordList.streaming(output, checkpointFingerprint(job))), output);
 					break;
 				}
 			case "Experiment1":
@@ -139,180 +583,789 @@ public class AsnAnalysis {
 				experiment2(input, output);	
 				break;
 			}
+			case "Tune":
+			{
+				LOG.info("Tuning (SVM and Logistic) - Level " + level);
+				save(tune(partitions.get(input), level, MyRecordList.streaming(output, checkpointFingerprint(job))), output);
+				break;
+			}
+			case "Predict":
+			{
+				if (modelStore == null) {
+					LOG.info("Error: the model store (-models) is required to predict.");
+					System.exit(-1);
+				}
+				
+				LOG.info("Prediction - Level " + level);
+				save(predict(input, level), output);
+				break;
+			}
+			case "Serve":
+			{
+				AnalysisServer server = new AnalysisServer(bindAddress, serverPort, serverWorkers, input);
+				server.start();
+				LOG.info("Listening on " + bindAddress + ":" + serverPort);
+				server.awaitStop();
+				break;
+			}
+			case "Worker":
+			{
+				Worker worker = new Worker(bindAddress, serverPort);
+				LOG.info("Worker listening on " + bindAddress + ":" + serverPort);
+				worker.run();
+				break;
+			}
 		}		
 	}
 
 
+	/**
+	 * The fingerprint of the checkpoint journal of a job: the operation, the
+	 * level, the input file (path, size and modification time) and the
+	 * options that change its rows.
+	 */
+	private static String checkpointFingerprint(Job job) throws IOException {
+		File input = new File(job.input);
+		StringBuilder res = new StringBuilder();
+		res.append(job.operation).append(' ').append(job.level);
+		res.append(' ').append(input.getCanonicalPath()).append(' ').append(input.length()).append(' ').append(input.lastModified());
+		res.append(' ').append(SVM_SPEC).append(gramOption()).append(' ').append(cvRepeats);
+		if (job.operation.equals("Tune")) {
+			res.append(' ').append(Arrays.toString(gridC)).append(Arrays.toString(gridExponent)).append(Arrays.toString(gridRidge));
+			res.append(' ').append(tuneMinFolds).append(' ').append(tuneNested);
+		}
+		if (job.operation.equals("FeatureCurve")) {
+			res.append(' ').append(curveMaxK);
+		}
+		if (job.operation.equals("Screen")) {
+			res.append(' ').append(screenLoss).append(' ').append(screenEpochs).append(' ').append(refineRank).append(',').append(refineWidth);
+		}
+		return res.toString();
+	}
+
+
+	/**
+	 * Loads an ARFF file, or takes it from the registry of the server.
+	 */
+	static Instances loadDataSet(String arffFile) throws Exception {
+		if (registry != null) {
+			return registry.dataSet(arffFile);
+		}
+		return readDataSet(arffFile);
+	}
+
+
+	/**
+	 * Reads an ARFF file, through its binary cache unless -nocache is given.
+	 */
+	@SuppressWarnings("try")
+	static Instances readDataSet(String arffFile) throws Exception {
+		try (RunReport.Timer t = RunReport.time("load")) {
+			if (useCache) {
+				return DatasetCache.load(arffFile);
+			}
+			return ArffParser.load(arffFile);
+		}
+	}
+	
+	
 	static String roundDouble(double d) {
 		return String.format("%.3f", d).replace(",", ".");
 	}
 
 	
-	private static Evaluation doLogisticClassification(Instances dataset, String className) throws Exception {
-		dataset.setClass(dataset.attribute(className));
-		
-		// other options
-		int seed  = 1; //87452;
-		int folds = 10;
-		
-		// randomize data
-		Random rand = new Random(seed);
-		Instances randDataLI = new Instances(dataset);
-		randDataLI.randomize(rand);
-		if (randDataLI.classAttribute().isNominal())
-			randDataLI.stratify(folds);
-		
-		// perform cross-validation
-		Evaluation eval = new Evaluation(randDataLI);
-		
-		for (int n = 0; n < folds; n++) {
-			Instances test = randDataLI.testCV(folds, n);
-			// the above code is used by the StratifiedRemoveFolds filter, the
-			// code below by the Explorer/Experimenter:
-			Instances train = randDataLI.trainCV(folds, n, rand);
+	@SuppressWarnings("try")
+	private static void save(MyRecordList rl, String csvOutput) throws IOException {
+		RunReport.setGroup(null);
+		try (RunReport.Timer t = RunReport.time("save")) {
+			rl.saveToFile(csvOutput);
+			if (columnarOutput) {
+				rl.saveColumnar(csvOutput + ".col");
+			}
+		}
+	}
+
+	
+	static Evaluation doLogisticClassification(Instances dataset, String className) throws Exception {
+		return doLogisticClassification(new FeatureMatrix(dataset).view(className));
+	}
+	
+	
+	static Evaluation doLogisticClassification(FeatureView view) throws Exception {
+		return crossValidate(view, LOGISTIC_SPEC, () -> newLogistic(OPTS_LOGISTIC));
+	}
+	
+	
+	/**
+	 * The factory of the classifiers of a classifier spec (class name and
+	 * options), as used by the workers of the distributed mode: the SVMs are
+	 * trained by FastSMO, as in doSvmClassification(). Only the classifiers
+	 * of the analyses are accepted, since the spec comes from the network.
+	 * 
+	 * @param kernelBudget the memory (in bytes) the kernel values of an SVM
+	 * may use
+	 */
+	static Callable<Classifier> classifierFactory(String classifierSpec, long kernelBudget) throws Exception {
+		if (classifierSpec.equals(SVM_SPEC)) {
+			return () -> newSvm(OPTS_SVM, kernelBudget);
+		} else if (classifierSpec.equals(LOGISTIC_SPEC)) {
+			return () -> newLogistic(OPTS_LOGISTIC);
+		}
+		throw new IllegalArgumentException("Unsupported classifier: " + classifierSpec);
+	}
+	
+	
+	private static Classifier newLogistic(String options) throws Exception {
+		Logistic log = new Logistic();
+		log.setOptions(Utils.splitOptions(options));
+		return log;
+	}
+	
+	
+	/**
+	 * The options of Logistic with the given ridge.
+	 */
+	static String logisticOptions(double ridge) {
+		return "-R " + ridge + " -M -1 -num-decimal-places 4";
+	}
+	
+	
+	static Evaluation doSvmClassification(Instances dataset, String className) throws Exception {
+		return doSvmClassification(new FeatureMatrix(dataset).view(className));
+	}
+	
+	
+	/**
+	 * The models are trained by FastSMO, which gives the same models as SMO
+	 * (hence the same classifier spec in the result cache).
+	 */
+	static Evaluation doSvmClassification(FeatureView view) throws Exception {
+		return crossValidate(view, SVM_SPEC, AsnAnalysis::newSvm);
+	}
+	
+	
+	/**
+	 * The cross-validations of the SVM with the seeds 1..-repeat (the first
+	 * one is the one of doSvmClassification()).
+	 */
+	static List<Evaluation> doSvmClassifications(FeatureView view) throws Exception {
+		return crossValidate(view, SVM_SPEC, AsnAnalysis::newSvm, cvRepeats);
+	}
+	
+	
+	private static Classifier newSvm() throws Exception {
+		return newSvm(OPTS_SVM);
+	}
+	
+	
+	private static Classifier newSvm(String options) throws Exception {
+		return newSvm(options, kernelBudget());
+	}
+	
+	
+	private static Classifier newSvm(String options, long kernelBudget) throws Exception {
+		FastSMO svm = new FastSMO();
+		svm.setOptions(Utils.splitOptions(options));
+		svm.setCacheBudget(kernelBudget);
+		return svm;
+	}
+	
+	
+	/**
+	 * The memory (in bytes) the kernel values of a group may use: -kernelcache
+	 * is split among the threads, since each one trains the SVMs of a group
+	 * at a time.
+	 */
+	private static long kernelBudget() {
+		return kernelBudget(kernelCacheMB << 20);
+	}
+	
+	
+	/**
+	 * The share of a thread of the given kernel cache (in bytes), e.g. the
+	 * -kernelcache of the coordinator on a worker.
+	 */
+	static long kernelBudget(long kernelCache) {
+		return kernelCache / executor.getNumThreads();
+	}
+	
+	
+	/**
+	 * The options of SMO with the given complexity and exponent of the
+	 * polynomial kernel.
+	 */
+	static String svmOptions(double c, double exponent) {
+		return "-C " + c + " -L 0.001 -P 1.0E-12 -N 0 -V -1 -W 1 -K \"weka.classifiers.functions.supportVector.PolyKernel -E " + exponent
+				+ " -C 250007\" -calibrator \"weka.classifiers.functions.Logistic -R 1.0E-8 -M -1 -num-decimal-places 4\"";
+	}
+	
+	
+	/**
+	 * Trains the SVM of a group on all its rows and stores it, if a model
+	 * store is given (-models).
+	 * 
+	 * @param kind "RF" or "Area"
+	 */
+	@SuppressWarnings("try")
+	private static void storeSvmModel(String kind, String group, int level, FeatureView view) throws Exception {
+		if (modelStore == null) {
+			return;
+		}
+		try (RunReport.Timer t = RunReport.time("model")) {
+			Instances train = view.toInstances();
+			Classifier svm = newSvm();
+			svm.buildClassifier(train);
+			modelStore.put(kind, group, level, SVM_SPEC, svm, train);
+		}
+	}
+	
+	
+	/**
+	 * 10-fold cross-validation where the classifiers of the folds are trained
+	 * concurrently. The folds are drawn in order before training, since
+	 * trainCV() shuffles each training set with the shared random generator,
+	 * and the models are evaluated in fold order: the resulting Evaluation is
+	 * the same as the one of the sequential loop.
+	 * 
+	 * The folds are index arrays over the rows of the view (see
+	 * FeatureView.folds()): only the training and test sets given to
+	 * Weka are built as Instances, and they share the values of the rows.
+	 * 
+	 * When a result cache is given (-resultcache), the confusion matrix of
+	 * the cross-validation is looked up by the content of the dataset, the
+	 * classifier (class name and options), the seed and the number of folds.
+	 */
+	private static Evaluation crossValidate(FeatureView view, String classifierSpec, Callable<Classifier> classifierFactory) throws Exception {
+		return crossValidate(view, classifierSpec, classifierFactory, 1).get(0);
+	}
+	
+	
+	/**
+	 * Repeated cross-validation: one 10-fold cross-validation for each seed
+	 * from 1 to the given number of repetitions, in seed order. The folds of
+	 * all the repetitions are trained concurrently, or by a remote worker with
+	 * -nodes (see Coordinator).
+	 */
+	@SuppressWarnings("try")
+	private static List<Evaluation> crossValidate(FeatureView view, String classifierSpec, Callable<Classifier> classifierFactory, int repeats) throws Exception {
+		try (RunReport.Timer t = RunReport.time("cv")) {
+			// other options
+			int firstSeed = 1; //87452;
+			int folds = 10;
 			
-			String optsLogistic = "-R 1.0E-8 -M -1 -num-decimal-places 4";
-			Logistic log = new Logistic();
-			log.setOptions(Utils.splitOptions(optsLogistic));
+			Evaluation[] evals = new Evaluation[repeats];
+			String[] keys = new String[repeats];
+			List<Integer> seeds = new ArrayList<Integer>();
+			for (int r = 0; r < repeats; r++) {
+				int seed = firstSeed + r;
+				if (resultCache != null) {
+					try (RunReport.Timer tc = RunReport.time("cv/cache")) {
+						keys[r] = resultCache.key(view, classifierSpec.startsWith(SMO.class.getName()) ? classifierSpec + gramOption() : classifierSpec, seed, folds);
+						double[][] confusionMatrix = resultCache.get(keys[r]);
+						if (confusionMatrix != null) {
+							evals[r] = ResultCache.toEvaluation(view.toInstances(), confusionMatrix);
+							continue;
+						}
+					}
+				}
+				seeds.add(seed);
+			}
 			
-			log.buildClassifier(train);
-			eval.evaluateModel(log, test);
+			List<Evaluation> computed = null;
+			if (coordinator != null && !seeds.isEmpty()) {
+				List<double[][]> confusionMatrices = coordinator.crossValidate(view, classifierSpec, gramStorage, kernelCacheMB << 20, seeds, folds);
+				if (confusionMatrices != null) {
+					computed = new ArrayList<Evaluation>(seeds.size());
+					for (double[][] confusionMatrix : confusionMatrices) {
+						computed.add(ResultCache.toEvaluation(view.toInstances(), confusionMatrix));
+					}
+				}
+			}
+			if (computed == null) {
+				computed = crossValidateFolds(view, classifierFactory, seeds, folds);
+			}
+			for (int i = 0; i < seeds.size(); i++) {
+				int r = seeds.get(i) - firstSeed;
+				evals[r] = computed.get(i);
+				if (resultCache != null) {
+					resultCache.put(keys[r], evals[r].confusionMatrix());
+				}
+			}
+			return Arrays.asList(evals);
+		}
+	}
+	
+	
+	/**
+	 * The -gram option, which changes the rounding of the kernel values of
+	 * the SVMs (hence possibly their models), in the keys of the result cache
+	 * and of the checkpoints.
+	 */
+	private static String gramOption() {
+		return gramStorage == null ? "" : " -gram " + gramStorage;
+	}
+	
+	
+	/**
+	 * The Gram matrix of the rows of a group, shared by the SVMs of all its
+	 * folds and seeds, with the given storage (see -gram) and a linear
+	 * FastSMO; null otherwise.
+	 */
+	@SuppressWarnings("try")
+	private static GramMatrix gramMatrix(FeatureView view, Callable<Classifier> classifierFactory, String gramStorage, long kernelBudget) throws Exception {
+		if (gramStorage == null) {
+			return null;
+		}
+		Classifier cls = classifierFactory.call();
+		if (!(cls instanceof FastSMO)) {
+			return null;
+		}
+		try (RunReport.Timer t = RunReport.time("cv/gram")) {
+			return ((FastSMO) cls).gramMatrix(view.toInstances(), kernelBudget, gramStorage.equals("float"));
+		}
+	}
+	
+	
+	static List<Evaluation> crossValidateFolds(FeatureView view, Callable<Classifier> classifierFactory, List<Integer> seeds, int folds) throws Exception {
+		return crossValidateFolds(view, classifierFactory, seeds, folds, gramStorage, kernelBudget());
+	}
+	
+	
+	/**
+	 * @param gramStorage the values of the Gram matrix of the group (see
+	 * -gram), or null for none
+	 * @param kernelBudget the memory (in bytes) the Gram matrix may use
+	 */
+	static List<Evaluation> crossValidateFolds(FeatureView view, Callable<Classifier> classifierFactory, List<Integer> seeds, int folds, String gramStorage, long kernelBudget) throws Exception {
+		GramMatrix groupGram = gramMatrix(view, classifierFactory, gramStorage, kernelBudget);
+		return crossValidateFolds(view, classifierFactory, seeds, folds, groupGram, null);
+	}
+	
+	
+	/**
+	 * @param groupGram the Gram matrix of the group, shared by all the folds,
+	 * or null
+	 * @param foldGrams the Gram matrix of the training set of each fold, in
+	 * the order of the seeds and folds (null entries for the folds without),
+	 * or null
+	 */
+	@SuppressWarnings("try")
+	private static List<Evaluation> crossValidateFolds(FeatureView view, Callable<Classifier> classifierFactory, List<Integer> seeds, int folds, GramMatrix groupGram, GramMatrix[] foldGrams) throws Exception {
+		List<Evaluation> evals = new ArrayList<Evaluation>(seeds.size());
+		List<Instances> testSets = new ArrayList<Instances>(seeds.size() * folds);
+		List<Callable<Classifier>> tasks = new ArrayList<Callable<Classifier>>(seeds.size() * folds);
+		
+		// randomize data
+		try (RunReport.Timer ts = RunReport.time("cv/split")) {
+			for (int seed : seeds) {
+				FeatureView.Folds split = view.folds(seed, folds);
+				
+				// perform cross-validation
+				evals.add(new Evaluation(view.toInstances(split.order)));
+				
+				for (int n = 0; n < folds; n++) {
+					Instances test = view.toInstances(split.test[n]);
+					// the above code is used by the StratifiedRemoveFolds filter, the
+					// code below by the Explorer/Experimenter:
+					Instances train = view.toInstances(split.train[n]);
+					testSets.add(test);
+					
+					int fold = n;
+					GramMatrix gram = foldGrams != null ? foldGrams[tasks.size()] : groupGram;
+					int[] positions = foldGrams != null ? identity(train.numInstances()) : split.train[n];
+					tasks.add(() -> {
+						try (RunReport.Timer t = RunReport.time("cv/train", fold)) {
+							Classifier cls = classifierFactory.call();
+							if (gram != null) {
+								((FastSMO) cls).setGramMatrix(gram, positions);
+							}
+							cls.buildClassifier(train);
+							return cls;
+						}
+					});
+				}
+			}
+		}
+		
+		List<Classifier> models = executor.invokeAll(tasks);
+		for (int i = 0; i < models.size(); i++) {
+			try (RunReport.Timer t = RunReport.time("cv/evaluate", i % folds)) {
+				evals.get(i / folds).evaluateModel(models.get(i), testSets.get(i));
+			}
+		}
+		
+		return evals;
+	}
+	
+	
+	private static int[] identity(int n) {
+		int[] positions = new int[n];
+		for (int i = 0; i < n; i++) {
+			positions[i] = i;
+		}
+		return positions;
+	}
+	
+	
+	/**
+	 * The header of the rows of the RF, Area and FeatureSel analyses: with
+	 * -repeat, precision, recall and F-measure are the means of the
+	 * repetitions, followed by their standard deviations and by the 95%
+	 * confidence interval of the F-measure.
+	 */
+	private static String[] cvHeader(String group) {
+		if (cvRepeats == 1) {
+			return new String[] {group, "Precision", "Recall", "F-Measure"};
+		}
+		return new String[] {group, "Precision", "Recall", "F-Measure", "Precision SD", "Recall SD", "F-Measure SD", "F-Measure CI Low", "F-Measure CI High"};
+	}
+	
+	
+	/**
+	 * The row of a group of the RF, Area and FeatureSel analyses (see
+	 * cvHeader()).
+	 */
+	private static String[] cvRecord(String group, List<Evaluation> evals) {
+		int n = evals.size();
+		double[][] values = new double[3][n];
+		for (int r = 0; r < n; r++) {
+			values[0][r] = evals.get(r).precision(0);
+			values[1][r] = evals.get(r).recall(0);
+			values[2][r] = evals.get(r).fMeasure(0);
+		}
+		String precision = roundDouble(Utils.mean(values[0]));
+		String recall = roundDouble(Utils.mean(values[1]));
+		String fMeasure = roundDouble(Utils.mean(values[2]));
+		if (n == 1) {
+			LOG.info(group + " - Precision: " + precision + " - Recall: " + recall + " - F-Measure: " + fMeasure);
+			return new String[] {group, precision, recall, fMeasure};
+		}
+		
+		double fMeasureSd = Math.sqrt(Utils.variance(values[2]));
+		double halfWidth = studentT975(n - 1) * fMeasureSd / Math.sqrt(n);
+		LOG.info(group + " - Precision: " + precision + " - Recall: " + recall + " - F-Measure: " + fMeasure + " +/- " + roundDouble(halfWidth));
+		return new String[] {group, precision, recall, fMeasure,
+				roundDouble(Math.sqrt(Utils.variance(values[0]))), roundDouble(Math.sqrt(Utils.variance(values[1]))), roundDouble(fMeasureSd),
+				roundDouble(Utils.mean(values[2]) - halfWidth), roundDouble(Utils.mean(values[2]) + halfWidth)};
+	}
+	
+	
+	/**
+	 * The 97.5% quantile of the Student's t distribution with the given
+	 * degrees of freedom, i.e. the t such that P(|T| > t) = 0.05.
+	 */
+	static double studentT975(int df) {
+		double low = 0;
+		double high = 1000;
+		for (int i = 0; i < 100; i++) {
+			double t = (low + high) / 2;
+			if (Statistics.incompleteBeta(df / 2.0, 0.5, df / (df + t * t)) > 0.05) {
+				low = t;
+			} else {
+				high = t;
+			}
 		}
-		
-		return eval;
+		return (low + high) / 2;
+	}
+	
+	
+	/**
+	 * @param fingerprint the fingerprint of the analysis for the checkpoint
+	 * journal (see checkpointFingerprint()), null for no journal
+	 */
+	static void svmRFsLevel(DatasetPartition partition, String csvOutput, int level, String fingerprint) throws Exception {
+		save(svmRFsLevel(partition, level, MyRecordList.streaming(csvOutput, fingerprint)), csvOutput);
+	}
+	
+	
+	/**
+	 * The rows of the RF analysis, sorted by F-Measure.
+	 */
+	static MyRecordList svmRFsLevel(DatasetPartition partition, int level) throws Exception {
+		return svmRFsLevel(partition, level, new MyRecordList());
 	}
 	
 	
-	private static Evaluation doSvmClassification(Instances dataset, String className) throws Exception {
-		dataset.setClass(dataset.attribute(className));
+	/**
+	 * The rows of the analysis, added to the given list (e.g. a streaming one)
+	 * in the order of the groups, and streamed as the groups complete.
+	 */
+	@SuppressWarnings("try")
+	static MyRecordList svmRFsLevel(DatasetPartition partition, int level, MyRecordList rl) throws Exception {
+		Instances dataSet = partition.getHeader();
+		LOG.info("Recruitment Field Analysis (SVM) - Level " + level);
 		
-		// other options
-		int seed  = 1; //87452;
-		int folds = 10;
+		// CSV OUTPUT
+		rl.setHeader(cvHeader("Recruitment Field"));
 		
-		// randomize data
-		Random rand = new Random(seed);
-		Instances randDataLI = new Instances(dataset);
-		randDataLI.randomize(rand);
-		if (randDataLI.classAttribute().isNominal())
-			randDataLI.stratify(folds);
-		
-		// perform cross-validation
-		Evaluation eval = new Evaluation(randDataLI);
-		
-		for (int n = 0; n < folds; n++) {
-			Instances test = randDataLI.testCV(folds, n);
-			// the above code is used by the StratifiedRemoveFolds filter, the
-			// code below by the Explorer/Experimenter:
-			Instances train = randDataLI.trainCV(folds, n, rand);
-			
-			String optsSVM = "-C 1.0 -L 0.001 -P 1.0E-12 -N 0 -V -1 -W 1 -K \"weka.classifiers.functions.supportVector.PolyKernel -E 1.0 -C 250007\" -calibrator \"weka.classifiers.functions.Logistic -R 1.0E-8 -M -1 -num-decimal-places 4\""; // -x 10 -v -o -c";
-			SMO svm = new SMO();
-			svm.setOptions(Utils.splitOptions(optsSVM));
+		Enumeration<Object> enumRFs = dataSet.attribute(1).enumerateValues();
+		
+		List<Callable<String[]>> tasks = new ArrayList<Callable<String[]>>();
+		long[] costs = new long[partition.numRFs()];
+		int indexRF = 1;
+		while (enumRFs.hasMoreElements()) {
+			String rf = (String)enumRFs.nextElement();
+			int currIndexRF = indexRF;
+			costs[tasks.size()] = rl.completed(rf) != null ? 0 : partition.cost(new int[] {currIndexRF - 1}, level - 1);
 			
-			svm.buildClassifier(train);
-			eval.evaluateModel(svm, test);
+			tasks.add(() -> {
+				if (rl.completed(rf) != null) {
+					return rl.completed(rf)[0];
+				}
+				RunReport.setGroup(rf);
+				
+				// SAVE .ARFF
+		     	//try (PrintWriter out = new PrintWriter("data/output/RFs/" + rf.replace("/", "-") + "_L" + level + ".arff")) {
+		     	//	out.println(partition.subset(currIndexRF - 1, level - 1).toString());
+		     	//}
+	
+		     	/**
+				 * Filtering SDs and Levels, Removing Attributes
+				 */
+				FeatureView dataSetFilteredLevelRm;
+				try (RunReport.Timer t = RunReport.time("filter")) {
+					dataSetFilteredLevelRm = partition.group(new int[] {currIndexRF - 1}, level - 1, new int[] {1, 2, 3}, "Abilitato");
+				}
+				
+				// SAVE .ARFF
+		     	//try (PrintWriter out = new PrintWriter("data/output/RFs/" + rf.replace("/", "-") + "_L" + level + "_removed.arff")) {
+		     	//	out.println(dataSetFilteredLevelRm.toInstances().toString());
+		     	//}
+		     	
+				/**
+				 * Classification with SVM
+				 **/
+				
+		     	List<Evaluation> evals = doSvmClassifications(dataSetFilteredLevelRm);
+		     	storeSvmModel("RF", rf, level, dataSetFilteredLevelRm);
+				
+				String[] record = cvRecord(rf, evals);
+				rl.streamGroup(rf, record);
+				return record;
+			});
+			indexRF += 1;
+			//System.exit(0);
 		}
 		
-		return eval;
+		for (String[] record : executor.invokeAll(tasks, costs)) {
+			rl.addRecord(record);
+		}
+
+		rl.sortByCol(3, MyRecordList.SortDESC);
+		return rl;
 	}
 	
 	
-	private static void svmRFsLevel(Instances dataSet, String csvOutput, int level) throws Exception {
-		LOG.info("Recruitment Field Analysis (SVM) - Level " + level);
+	/**
+	 * The approximate RF analysis (-op Screen): the rows of svmRFsLevel(), on
+	 * the same folds, with the SVM replaced by a linear model trained by SGD
+	 * (see SgdScreen), sorted by F-Measure. With -refine, the RFs ranked
+	 * around the cut-off (refineWidth above and below it) are then analysed
+	 * with the SVM, and their rows replaced by the exact ones.
+	 */
+	@SuppressWarnings("try")
+	static MyRecordList screenRFsLevel(DatasetPartition partition, int level, MyRecordList rl) throws Exception {
+		Instances dataSet = partition.getHeader();
+		LOG.info("Recruitment Field Screening (" + screenLoss + ", " + screenEpochs + " epochs) - Level " + level);
 		
 		// CSV OUTPUT
-		MyRecordList rl = new MyRecordList();
-		rl.setHeader("Recruitment Field", "Precision", "Recall", "F-Measure");
+		rl.setHeader(cvHeader("Recruitment Field"));
 		
 		Enumeration<Object> enumRFs = dataSet.attribute(1).enumerateValues();
 		
+		List<String> rfs = new ArrayList<String>();
+		List<Callable<String[]>> tasks = new ArrayList<Callable<String[]>>();
+		long[] costs = new long[partition.numRFs()];
 		int indexRF = 1;
 		while (enumRFs.hasMoreElements()) {
 			String rf = (String)enumRFs.nextElement();
+			int currIndexRF = indexRF;
+			int task = tasks.size();
+			rfs.add(rf);
+			costs[task] = rl.completed(rf) != null ? 0 : partition.cost(new int[] {currIndexRF - 1}, level - 1);
 			
-			Filter filterRWV = new RemoveWithValues();
-			
-			/**
-			 * Filtering SDs
-			 */
-			String optsFilterSD = "-S 0.0 -C 2 -L " + indexRF + " -V -M";
-			filterRWV.setOptions(Utils.splitOptions(optsFilterSD));
-			filterRWV.setInputFormat(dataSet);
-			Instances dataSetFiltered = Filter.useFilter(dataSet, filterRWV);
-			
-			/**
-			 * Filtering Levels
-			 */
-			String optsFilterLevel = "-S 0.0 -C 3 -L " + level + " -V -M";
-			filterRWV.setOptions(Utils.splitOptions(optsFilterLevel));
-			filterRWV.setInputFormat(dataSetFiltered);
-			Instances dataSetFilteredLevel = Filter.useFilter(dataSetFiltered, filterRWV);
-			
-			// SAVE .ARFF
-	     	//try (PrintWriter out = new PrintWriter("data/output/RFs/" + rf.replace("/", "-") + "_L" + level + ".arff")) {
-	     	//	out.println(dataSetFilteredLevel.toString());
-	     	//}
-
-	     	/**
-			 * Removing Attributes
-			 */
-			Filter filterRm = new Remove();
-			String optsFilterRm = "-R 2,3,4";
-			filterRm.setOptions(Utils.splitOptions(optsFilterRm));
-			filterRm.setInputFormat(dataSet);
-			Instances dataSetFilteredLevelRm = Filter.useFilter(dataSetFilteredLevel, filterRm);
-			
-			// SAVE .ARFF
-	     	//try (PrintWriter out = new PrintWriter("data/output/RFs/" + rf.replace("/", "-") + "_L" + level + "_removed.arff")) {
-	     	//	out.println(dataSetFilteredLevelRm.toString());
-	     	//}
-	     	
-			/**
-			 * Classification with SVM
-			 **/
-			
-	     	Evaluation eval = doSvmClassification(dataSetFilteredLevelRm, "Abilitato");
-			
-			String precision = roundDouble(eval.precision(0));
-			String recall = roundDouble(eval.recall(0));
-			String fMeasure = roundDouble(eval.fMeasure(0));
-			rl.addRecord(rf, precision, recall, fMeasure);
-			
-			LOG.info(rf + " - Precision: " + precision + " - Recall: " + recall + " - F-Measure: " + fMeasure);
+			tasks.add(() -> {
+				if (rl.completed(rf) != null) {
+					return rl.completed(rf)[0];
+				}
+				RunReport.setGroup(rf);
+				FeatureView view;
+				try (RunReport.Timer t = RunReport.time("filter")) {
+					view = partition.group(new int[] {currIndexRF - 1}, level - 1, new int[] {1, 2, 3}, "Abilitato");
+				}
+				
+				/**
+				 * Classification with SGD
+				 */
+				List<Evaluation> evals = new ArrayList<Evaluation>(cvRepeats);
+				try (RunReport.Timer t = RunReport.time("screen")) {
+					SgdScreen screen = new SgdScreen(view, screenLoss, screenEpochs);
+					for (int seed = 1; seed <= cvRepeats; seed++) {
+						evals.add(ResultCache.toEvaluation(view.header(), screen.crossValidate(seed, 10)));
+					}
+				}
+				
+				String[] record = cvRecord(rf, evals);
+				rl.streamGroup(rf, record);
+				return record;
+			});
 			indexRF += 1;
-			//System.exit(0);
 		}
-
+		List<String[]> records = new ArrayList<String[]>(executor.invokeAll(tasks, costs));
+		
+		if (refineRank > 0) {
+			// the ranking of the screened rows, as sortByCol() sorts them
+			MyRecordList ranking = new MyRecordList();
+			for (String[] record : records) {
+				ranking.addRecord(record);
+			}
+			ranking.sortByCol(3, MyRecordList.SortDESC);
+			List<String> ranked = new ArrayList<String>();
+			for (String[] record : ranking.getRecords()) {
+				ranked.add(record[0]);
+			}
+			
+			List<Callable<String[]>> svmTasks = new ArrayList<Callable<String[]>>();
+			List<Integer> refined = new ArrayList<Integer>();
+			int from = Math.max(0, refineRank - refineWidth);
+			int to = Math.min(ranked.size(), refineRank + refineWidth);
+			long[] svmCosts = new long[to - from];
+			for (String rf : ranked.subList(from, to)) {
+				int task = rfs.indexOf(rf);
+				int currIndexRF = task + 1;
+				refined.add(task);
+				svmCosts[svmTasks.size()] = rl.completed("SVM " + rf) != null ? 0 : partition.cost(new int[] {currIndexRF - 1}, level - 1);
+				svmTasks.add(() -> {
+					if (rl.completed("SVM " + rf) != null) {
+						return rl.completed("SVM " + rf)[0];
+					}
+					RunReport.setGroup(rf);
+					// loaded again, so that with -stream the rows of a single group are in memory at a time
+					FeatureView view;
+					try (RunReport.Timer t = RunReport.time("filter")) {
+						view = partition.group(new int[] {currIndexRF - 1}, level - 1, new int[] {1, 2, 3}, "Abilitato");
+					}
+					String[] record = cvRecord(rf, doSvmClassifications(view));
+					rl.checkpoint("SVM " + rf, record);
+					return record;
+				});
+			}
+			LOG.info("Exact analysis of the RFs ranked " + (from + 1) + " to " + to + "...");
+			List<String[]> exact = executor.invokeAll(svmTasks, svmCosts);
+			for (int i = 0; i < refined.size(); i++) {
+				records.set(refined.get(i), exact.get(i));
+			}
+		}
+		
+		for (String[] record : records) {
+			rl.addRecord(record);
+		}
 		rl.sortByCol(3, MyRecordList.SortDESC);
-		rl.saveToFile(csvOutput);
+		return rl;
+	}
+	
+	
+	private static void svmAreas(DatasetPartition partition, String csvOutput, int level, String fingerprint) throws Exception {
+		save(svmAreas(partition, level, MyRecordList.streaming(csvOutput, fingerprint)), csvOutput);
 	}
 	
 	
-	private static void svmAreas(Instances dataSet, String csvOutput, int level) throws Exception {
+	/**
+	 * The rows of the Area analysis, sorted by Area.
+	 */
+	static MyRecordList svmAreas(DatasetPartition partition, int level) throws Exception {
+		return svmAreas(partition, level, new MyRecordList());
+	}
+	
+	
+	/**
+	 * The rows of the analysis, added to the given list (e.g. a streaming one)
+	 * in the order of the groups, and streamed as the groups complete.
+	 */
+	@SuppressWarnings("try")
+	static MyRecordList svmAreas(DatasetPartition partition, int level, MyRecordList rl) throws Exception {
+		Instances dataSet = partition.getHeader();
 		LOG.info("Area Analysis (SVM) - Level " + level);
 		
 		// CSV OUTPUT
-		MyRecordList rl = new MyRecordList();
-		rl.setHeader("Area", "Precision", "Recall", "F-Measure");
+		rl.setHeader(cvHeader("Area"));
+		
+		HashMap<String, ArrayList<Integer>> areaMapIndices = areaRFs(dataSet);
+		
+		List<Callable<String[]>> tasks = new ArrayList<Callable<String[]>>();
+		long[] costs = new long[areaMapIndices.size()];
+		for (String area : areaMapIndices.keySet()) {
+			ArrayList<Integer> rfList = areaMapIndices.get(area);
+			int[] rfIndices = rfList.stream().mapToInt(Integer::intValue).toArray();
+			costs[tasks.size()] = rl.completed(area) != null ? 0 : partition.cost(rfIndices, level - 1);
+			
+			tasks.add(() -> {
+				if (rl.completed(area) != null) {
+					return rl.completed(area)[0];
+				}
+				RunReport.setGroup(area);
+				
+				// SAVE .ARFF
+		     	//try (PrintWriter out = new PrintWriter("data/output/Areas/" + area.replace("/", "-") + "_L" + level + ".arff")) {
+		     	//	out.println(partition.subset(rfIndices, level - 1).toString());
+		     	//}
+			     	
+				/**
+				 * Filtering SDs and Levels, Removing Attributes
+				 */
+				FeatureView dataSetFilteredLevelRm;
+				try (RunReport.Timer t = RunReport.time("filter")) {
+					dataSetFilteredLevelRm = partition.group(rfIndices, level - 1, new int[] {1, 2, 3}, "Abilitato");
+				}
+				
+				// SAVE .ARFF
+		     	//try (PrintWriter out = new PrintWriter("data/output/Areas/" + area.replace("/", "-") + "_L" + level + "_removed.arff")) {
+		     	//	out.println(dataSetFilteredLevelRm.toInstances().toString());
+		     	//}
+			     	
+				/**
+				 * Classification with SVM
+				 **/
+				List<Evaluation> evals = doSvmClassifications(dataSetFilteredLevelRm);
+				storeSvmModel("Area", area, level, dataSetFilteredLevelRm);
+				
+				String[] record = cvRecord(area, evals);
+				rl.streamGroup(area, record);
+				return record;
+			});
+		}
+		
+		for (String[] record : executor.invokeAll(tasks, costs)) {
+			rl.addRecord(record);
+		}
 		
+		rl.sortByCol(0, MyRecordList.SortASC);
+		return rl;
+	}
+
+	
+	/**
+	 * The (0-based) indices of the RFs of each Area, i.e. of the values of the
+	 * RF attribute (column 2) of the given dataset.
+	 */
+	static HashMap<String, ArrayList<Integer>> areaRFs(Instances dataSet) {
 		Enumeration<Object> enumRFs = dataSet.attribute(1).enumerateValues();
 		
 		// Organize RFs in Areas
-		HashMap<String, ArrayList<String>> areaMapIndices = new HashMap<String, ArrayList<String>>();
+		HashMap<String, ArrayList<Integer>> areaMapIndices = new HashMap<String, ArrayList<Integer>>();
 		
 		String[] arrAreas = {"01","02","03","04","05","06","07","08","09","10","11","12","13","14"};
 		String[] elevenBibl = {"11/E1", "11/E2", "11/E3", "11/E4"};
 		String[] eightNbibl = {"08/C1", "08/D1", "08/E1", "08/E2", "08/F1"};
 		for (String area : arrAreas) {
-			ArrayList<String> rfInArea = new ArrayList<String>();
+			ArrayList<Integer> rfInArea = new ArrayList<Integer>();
 			areaMapIndices.put(area, rfInArea);
 			if (area.equals("11")) {
-				ArrayList<String> rf11EInArea = new ArrayList<String>();
+				ArrayList<Integer> rf11EInArea = new ArrayList<Integer>();
 				areaMapIndices.put("11/E", rf11EInArea);
 			}
 			if (area.equals("08")) {
-				ArrayList<String> rf08NBInArea = new ArrayList<String>();
+				ArrayList<Integer> rf08NBInArea = new ArrayList<Integer>();
 				areaMapIndices.put("08-NB", rf08NBInArea);
 			}
 		}
@@ -322,166 +1375,315 @@ public class AsnAnalysis {
 			String rf = (String)enumRFs.nextElement();
 			
 			if (Arrays.asList(elevenBibl).contains(rf)) {
-				ArrayList<String> rfList = areaMapIndices.get("11/E");
-				rfList.add(Integer.toString(indexRF));
+				ArrayList<Integer> rfList = areaMapIndices.get("11/E");
+				rfList.add(indexRF - 1);
 				indexRF += 1;
 				continue;
 			}
 			
 			if (Arrays.asList(eightNbibl).contains(rf)) {
-				ArrayList<String> rfList = areaMapIndices.get("08-NB");
-				rfList.add(Integer.toString(indexRF));
+				ArrayList<Integer> rfList = areaMapIndices.get("08-NB");
+				rfList.add(indexRF - 1);
 				indexRF += 1;
 				continue;
 			}
 			
 			String area = rf.substring(0,2);
-			ArrayList<String> rfList = areaMapIndices.get(area);
-			rfList.add(Integer.toString(indexRF));
+			ArrayList<Integer> rfList = areaMapIndices.get(area);
+			rfList.add(indexRF - 1);
 			
 			indexRF += 1;
 		}
+		return areaMapIndices;
+	}
+
+	
+	private static void featureSel(DatasetPartition partition, String csvOutput, int level, String fingerprint) throws Exception {
+		save(featureSel(partition, level, MyRecordList.streaming(csvOutput, fingerprint)), csvOutput);
+	}
+	
+	
+	/**
+	 * The rows of the analysis with the top 15 features, sorted by F-Measure.
+	 */
+	static MyRecordList featureSel(DatasetPartition partition, int level) throws Exception {
+		return featureSel(partition, level, new MyRecordList());
+	}
+	
+	
+	/**
+	 * The rows of the analysis, added to the given list (e.g. a streaming one)
+	 * in the order of the groups, and streamed as the groups complete.
+	 */
+	@SuppressWarnings("try")
+	static MyRecordList featureSel(DatasetPartition partition, int level, MyRecordList rl) throws Exception {
+		LOG.info("Analysis of the top 15 features - Level " + level);
 		
-		for (String area : areaMapIndices.keySet()) {
-			ArrayList<String> rfList = areaMapIndices.get(area);
-			String rfString = String.join(",", rfList);
-			
-			Filter filterRWV = new RemoveWithValues();
-			
-			/**
-			 * Filtering SDs
-			 */
-			String optsFilterSD = "-S 0.0 -C 2 -L " + rfString + " -V -M";
-			filterRWV.setOptions(Utils.splitOptions(optsFilterSD));
-			filterRWV.setInputFormat(dataSet);
-			Instances dataSetFiltered = Filter.useFilter(dataSet, filterRWV);
-			
-			/**
-			 * Filtering Levels
-			 */
-			String optsFilterLevel = "-S 0.0 -C 3 -L " + level + " -V -M";
-			filterRWV.setOptions(Utils.splitOptions(optsFilterLevel));
-			filterRWV.setInputFormat(dataSetFiltered);
-			Instances dataSetFilteredLevel = Filter.useFilter(dataSetFiltered, filterRWV);
-			
-			// SAVE .ARFF
-	     	//try (PrintWriter out = new PrintWriter("data/output/Areas/" + area.replace("/", "-") + "_L" + level + ".arff")) {
-	     	//	out.println(dataSetFilteredLevel.toString());
-	     	//}
-	     	
-			/**
-			 * Removing Attributes
-			 */
-			Filter filterRm = new Remove();
-			String optsFilterRm = "-R 2,3,4";
-			filterRm.setOptions(Utils.splitOptions(optsFilterRm));
-			filterRm.setInputFormat(dataSet);
-			Instances dataSetFilteredLevelRm = Filter.useFilter(dataSetFilteredLevel, filterRm);
-			
-			// SAVE .ARFF
-	     	//try (PrintWriter out = new PrintWriter("data/output/Areas/" + area.replace("/", "-") + "_L" + level + "_removed.arff")) {
-	     	//	out.println(dataSetFilteredLevelRm.toString());
-	     	//}
-	     	
-			/**
-			 * Classification with SVM
-			 **/
-			Evaluation eval = doSvmClassification(dataSetFilteredLevelRm, "Abilitato");
-			
-			String precision = roundDouble(eval.precision(0));
-			String recall = roundDouble(eval.recall(0));
-			String fMeasure = roundDouble(eval.fMeasure(0));
-			rl.addRecord(area, precision, recall, fMeasure);
-			LOG.info(area + " - Precision: " + precision + " - Recall: " + recall + " - F-Measure: " + fMeasure);
+		// CSV OUTPUT
+		rl.setHeader(cvHeader("Recruitment Field"));
+
+		LOG.info("Selection of the top 15 features...");
+		List<CfsResult> cfsResults = cfsSelections(partition, level, rl);
+		HashMap<String, CfsResult> datasetMap = new HashMap<String, CfsResult>();
+		for (CfsResult res : cfsResults) {
+			datasetMap.put(res.rf, res);
+		}
+		
+		// the (0-based) columns kept by "Remove -V -R top15,last", in the same order
+		int[] keepTop15 = rankFeatures(cfsResults, 15);
+		List<Callable<String[]>> svmTasks = new ArrayList<Callable<String[]>>();
+		
+		long[] svmCosts = new long[datasetMap.size()];
+		for (String ssd : datasetMap.keySet()) {
+		   	CfsResult res = datasetMap.get(ssd);
+		   	svmCosts[svmTasks.size()] = rl.completed(ssd) != null ? 0 : (long) res.numRows * (keepTop15.length + 1);
 			
+		   	svmTasks.add(() -> {
+		   		if (rl.completed(ssd) != null) {
+		   			return rl.completed(ssd)[0];
+		   		}
+		   		RunReport.setGroup(ssd);
+		   		FeatureView ds = res.group(partition, level);
+		   		
+				/**
+				 * Removing Attributes
+				 */
+				FeatureView dsTop15;
+				try (RunReport.Timer t = RunReport.time("filter-top15")) {
+					int[] keep = Arrays.copyOf(keepTop15, keepTop15.length + 1);
+					keep[keepTop15.length] = ds.numAttributes() - 1;
+					dsTop15 = ds.select(keep, "Abilitato");
+				}
+				
+				/**
+				 * Classification with SVM
+				 */
+				String[] record = cvRecord(ssd, doSvmClassifications(dsTop15));
+				rl.streamGroup(ssd, record);
+				return record;
+		   	});
 		}
 		
-		rl.sortByCol(0, MyRecordList.SortASC);
-		rl.saveToFile(csvOutput);
+		for (String[] record : executor.invokeAll(svmTasks, svmCosts)) {
+			rl.addRecord(record);
+		}
+		rl.sortByCol(3, MyRecordList.SortDESC);
+		return rl;
 	}
 
 	
-	private static void featureSel(Instances dataSet, String csvOutput, int level) throws Exception {
-		LOG.info("Analysis of the top 15 features - Level " + level);
+	/**
+	 * The learning curve of the features of a level (-op FeatureCurve): the
+	 * features are ranked once, as for featureSel() (by the number of RFs
+	 * whose CFS selects them), and the SVM of each RF is cross-validated with
+	 * the top k features, for k from 1 to curveMaxK. One row per RF and k, in
+	 * the order of the RFs and of k, with the feature added at k.
+	 * 
+	 * The Gram matrix of each training fold is built once per RF and grows
+	 * with the features: the matrix of the top k+1 features is the one of the
+	 * top k plus the outer product of the column of the (k+1)-th feature (see
+	 * GramMatrix.incremental()). The matrices are per fold, not per RF, since
+	 * the columns are normalized on the training rows of the fold.
+	 */
+	@SuppressWarnings("try")
+	static MyRecordList featureCurve(DatasetPartition partition, int level, MyRecordList rl) throws Exception {
+		LOG.info("Feature curve - Level " + level);
 		
 		// CSV OUTPUT
-		MyRecordList rl = new MyRecordList();
-		rl.setHeader("Recruitment Field", "Precision", "Recall", "F-Measure");
-
-		LOG.info("Selection of the top 15 features...");
+		String[] cvHeader = cvHeader("Recruitment Field");
+		String[] header = new String[cvHeader.length + 2];
+		header[0] = cvHeader[0];
+		header[1] = "k";
+		header[2] = "Feature";
+		System.arraycopy(cvHeader, 1, header, 3, cvHeader.length - 1);
+		rl.setHeader(header);
+		
+		LOG.info("Ranking of the features...");
+		List<CfsResult> cfsResults = cfsSelections(partition, level, rl);
+		int[] ranked = rankFeatures(cfsResults, curveMaxK);
+		
+		List<Integer> seeds = new ArrayList<Integer>();
+		for (int r = 1; r <= cvRepeats; r++) {
+			seeds.add(r);
+		}
+		int folds = 10;
+		
+		List<Callable<String[][]>> tasks = new ArrayList<Callable<String[][]>>();
+		long[] costs = new long[cfsResults.size()];
+		for (CfsResult res : cfsResults) {
+			String rf = res.rf;
+			int classCol = res.header.numAttributes() - 1;
+			costs[tasks.size()] = rl.completed(rf) != null ? 0 : (long) res.numRows * ranked.length * ranked.length;
+			
+			tasks.add(() -> {
+				if (rl.completed(rf) != null) {
+					return rl.completed(rf);
+				}
+				RunReport.setGroup(rf);
+				FeatureView view = res.group(partition, level);
+				
+				/**
+				 * Empty Gram matrices of the training folds, sharing the
+				 * kernel cache budget
+				 */
+				FastSMO proto = (FastSMO) newSvm();
+				List<int[]> trains = new ArrayList<int[]>();
+				for (int seed : seeds) {
+					FeatureView.Folds split = view.folds(seed, folds);
+					trains.addAll(Arrays.asList(split.train));
+				}
+				GramMatrix[] grams = new GramMatrix[trains.size()];
+				try (RunReport.Timer t = RunReport.time("cv/gram")) {
+					for (int i = 0; i < grams.length; i++) {
+						grams[i] = proto.incrementalGramMatrix(view.toInstances(trains.get(i)), kernelBudget() / grams.length);
+					}
+				}
+				
+				String[][] rows = new String[ranked.length][];
+				for (int k = 1; k <= ranked.length; k++) {
+					int feature = ranked[k - 1];
+					
+					/**
+					 * Adding the column(s) of the k-th feature
+					 */
+					try (RunReport.Timer t = RunReport.time("cv/gram")) {
+						FeatureView single = view.select(new int[] {feature, classCol}, "Abilitato");
+						for (int i = 0; i < grams.length; i++) {
+							if (grams[i] != null) {
+								proto.addColumns(grams[i], single.toInstances(trains.get(i)));
+							}
+						}
+					}
+					
+					/**
+					 * Classification with SVM on the top k features
+					 */
+					int[] keep = Arrays.copyOf(ranked, k + 1);
+					keep[k] = classCol;
+					FeatureView viewK = view.select(keep, "Abilitato");
+					String[] record;
+					try (RunReport.Timer t = RunReport.time("cv")) {
+						record = cvRecord(rf + " (k=" + k + ")", crossValidateFolds(viewK, AsnAnalysis::newSvm, seeds, folds, null, grams));
+					}
+					rows[k - 1] = new String[record.length + 2];
+					rows[k - 1][0] = rf;
+					rows[k - 1][1] = String.valueOf(k);
+					rows[k - 1][2] = view.header().attribute(feature).name();
+					System.arraycopy(record, 1, rows[k - 1], 3, record.length - 1);
+				}
+				rl.streamGroup(rf, rows);
+				return rows;
+			});
+		}
+		
+		for (String[][] rows : executor.invokeAll(tasks, costs)) {
+			for (String[] row : rows) {
+				rl.addRecord(row);
+			}
+		}
+		return rl;
+	}
+	
+	
+	/**
+	 * The features selected by CFS on each RF of the given level, in the
+	 * order of the RFs. The selections are journaled as "CFS rf" in the
+	 * given list (see MyRecordList.checkpoint()).
+	 */
+	@SuppressWarnings("try")
+	private static List<CfsResult> cfsSelections(DatasetPartition partition, int level, MyRecordList rl) throws Exception {
+		Instances dataSet = partition.getHeader();
 		Enumeration<Object> enumRFs = dataSet.attribute(1).enumerateValues();
 		
+		List<Callable<CfsResult>> cfsTasks = new ArrayList<Callable<CfsResult>>();
+		long[] cfsCosts = new long[partition.numRFs()];
 		int indexRF = 1;
-		HashMap<Integer, Integer> featureSelCounter = new HashMap<Integer, Integer>();
-		HashMap<String, Instances> datasetMap = new HashMap<String, Instances>();
 		while (enumRFs.hasMoreElements()) {
 			String rf = (String)enumRFs.nextElement();
+			int currIndexRF = indexRF;
+			cfsCosts[cfsTasks.size()] = partition.cost(new int[] {currIndexRF - 1}, level - 1);
 			
-			Filter filterRWV = new RemoveWithValues();
-			
-			/**
-			 * Filtering SDs
-			 */
-			String optsFilterSD = "-S 0.0 -C 2 -L " + indexRF + " -V -M";
-			filterRWV.setOptions(Utils.splitOptions(optsFilterSD));
-			filterRWV.setInputFormat(dataSet);
-			Instances dataSetFiltered = Filter.useFilter(dataSet, filterRWV);
-			
-			/**
-			 * Filtering Levels
-			 */
-			String optsFilterLevelI = "-S 0.0 -C 3 -L " + level + " -V -M";
-			filterRWV.setOptions(Utils.splitOptions(optsFilterLevelI));
-			filterRWV.setInputFormat(dataSetFiltered);
-			Instances dataSetFilteredLevel = Filter.useFilter(dataSetFiltered, filterRWV);
-			
-			/**
-			 * Removing Attributes
-			 */
-			Filter filterRm = new Remove();
-			String optsFilterRm = "-R 2";
-			filterRm.setOptions(Utils.splitOptions(optsFilterRm));
-			filterRm.setInputFormat(dataSet);
-			Instances dataSetFilteredLevelRm = Filter.useFilter(dataSetFilteredLevel, filterRm);
-			datasetMap.put(rf, dataSetFilteredLevelRm);
-			
-			/**
-			 * CFS
-			 */
-			dataSetFilteredLevelRm.setClass(dataSetFilteredLevelRm.attribute("Abilitato"));
-						
-			weka.filters.supervised.attribute.AttributeSelection filter = new weka.filters.supervised.attribute.AttributeSelection();
-			//weka.attributeSelection.AttributeSelection filter = new weka.attributeSelection.AttributeSelection();
-			
-			CfsSubsetEval eval = new CfsSubsetEval();
-			eval.setOptions(Utils.splitOptions("-P 1 -E 1 -c last"));
-			filter.setEvaluator(eval);
-			
-			BestFirst search = new BestFirst();
-			search.setOptions(Utils.splitOptions("-D 1 -N 5"));
-			filter.setSearch(search);
-			
-			filter.setInputFormat(dataSetFilteredLevelRm);
-			
-			Instances newData = Filter.useFilter(dataSetFilteredLevelRm, filter);
-			
-			ArrayList<Integer> arrSelected = new ArrayList<Integer>();
-			for (int i=0; i<newData.numAttributes() -1; i++) {
-				String selAttrName = newData.attribute(i).name();
-				Enumeration<Attribute> attrs = dataSetFilteredLevelRm.enumerateAttributes();
-				int j = 0;
-				while (attrs.hasMoreElements()) {
-					Attribute currAttr = attrs.nextElement();
-					if (currAttr.name().equals(selAttrName)) {
-						arrSelected.add(j);
-						int count = featureSelCounter.containsKey(j) ? featureSelCounter.get(j) : 0;
-						featureSelCounter.put(j, count + 1);
+			cfsTasks.add(() -> {
+				RunReport.setGroup(rf);
+				
+				/**
+				 * Filtering SDs and Levels, Removing Attributes
+				 */
+				FeatureView viewRm;
+				Instances dataSetFilteredLevelRm;
+				try (RunReport.Timer t = RunReport.time("filter")) {
+					viewRm = partition.group(new int[] {currIndexRF - 1}, level - 1, new int[] {1}, "Abilitato");
+					dataSetFilteredLevelRm = viewRm.toInstances();
+				}
+				
+				// the features selected by a previous run
+				String[][] completed = rl.completed("CFS " + rf);
+				if (completed != null) {
+					List<Integer> selected = Arrays.stream(completed[0]).map(Integer::valueOf).collect(Collectors.toList());
+					return new CfsResult(rf, currIndexRF - 1, viewRm, selected);
+				}
+				
+				/**
+				 * CFS
+				 */
+				Instances newData;
+				try (RunReport.Timer t = RunReport.time("cfs")) {
+					dataSetFilteredLevelRm.setClass(dataSetFilteredLevelRm.attribute("Abilitato"));
+								
+					weka.filters.supervised.attribute.AttributeSelection filter = new weka.filters.supervised.attribute.AttributeSelection();
+					//weka.attributeSelection.AttributeSelection filter = new weka.attributeSelection.AttributeSelection();
+					
+					CfsSubsetEval eval = new FastCfsSubsetEval();
+					eval.setOptions(Utils.splitOptions("-P 1 -E 1 -c last"));
+					filter.setEvaluator(eval);
+					
+					BestFirst search = new BestFirst();
+					search.setOptions(Utils.splitOptions("-D 1 -N 5"));
+					filter.setSearch(search);
+					
+					filter.setInputFormat(dataSetFilteredLevelRm);
+					
+					newData = Filter.useFilter(dataSetFilteredLevelRm, filter);
+				}
+				
+				ArrayList<Integer> arrSelected = new ArrayList<Integer>();
+				for (int i=0; i<newData.numAttributes() -1; i++) {
+					String selAttrName = newData.attribute(i).name();
+					Enumeration<Attribute> attrs = dataSetFilteredLevelRm.enumerateAttributes();
+					int j = 0;
+					while (attrs.hasMoreElements()) {
+						Attribute currAttr = attrs.nextElement();
+						if (currAttr.name().equals(selAttrName)) {
+							arrSelected.add(j);
+						}
+						j++;
 					}
-					j++;
 				}
-			}
+				rl.checkpoint("CFS " + rf, arrSelected.stream().map(String::valueOf).toArray(String[]::new));
+				return new CfsResult(rf, currIndexRF - 1, viewRm, arrSelected);
+			});
 			indexRF += 1;
 		}
+		
+		return executor.invokeAll(cfsTasks, cfsCosts);
+	}
+	
+	
+	/**
+	 * The (0-based) columns of the features most often selected by CFS, at
+	 * most the given number, by decreasing number of selections.
+	 */
+	private static int[] rankFeatures(List<CfsResult> cfsResults, int limit) {
+		// merge the CFS results following the order of the RFs
+		HashMap<Integer, Integer> featureSelCounter = new HashMap<Integer, Integer>();
+		HashMap<String, Instances> datasetMap = new HashMap<String, Instances>();
+		for (CfsResult res : cfsResults) {
+			datasetMap.put(res.rf, res.header);
+			for (int j : res.selected) {
+				int count = featureSelCounter.containsKey(j) ? featureSelCounter.get(j) : 0;
+				featureSelCounter.put(j, count + 1);
+			}
+		}
 
 		ArrayList<Integer> temp = new ArrayList<Integer>();
 		for (Integer key : featureSelCounter.keySet() ) {
@@ -490,221 +1692,280 @@ public class AsnAnalysis {
 		Collections.sort(temp);
 		Collections.reverse(temp);
 		
-		LinkedHashSet<Integer> top15Counter = new LinkedHashSet<Integer>(temp.stream().limit(15).collect(Collectors.toList()));
+		LinkedHashSet<Integer> topCounter = new LinkedHashSet<Integer>(temp.stream().limit(limit).collect(Collectors.toList()));
 		
-		LinkedHashSet<Integer> top15Index = new LinkedHashSet<Integer>();
+		LinkedHashSet<Integer> topIndex = new LinkedHashSet<Integer>();
 		LOG.info("Selected Features:");
 		int numFound = 0;
-		for (int currVal : top15Counter) {
+		for (int currVal : topCounter) {
 			for (Integer attrInd : featureSelCounter.keySet()) {
-				if (featureSelCounter.get(attrInd) == currVal && numFound < 15) {
-					top15Index.add(attrInd + 1);
+				if (featureSelCounter.get(attrInd) == currVal && numFound < limit) {
+					topIndex.add(attrInd + 1);
 					LOG.info("\t* " + datasetMap.get("06/M1").attribute(attrInd).name() + " (#" + (attrInd+2) + " - selected " + featureSelCounter.get(attrInd) + " times)");
 					numFound++;
 				}
 			}
 		}
+		return topIndex.stream().limit(limit).mapToInt(i -> i - 1).toArray();
+	}
+	
+	
+	/**
+	 * Evaluates the grid of -op Tune on the RFs and the Areas of the given
+	 * level: SMO with each complexity (-gridC) and exponent of the polynomial
+	 * kernel (-gridE), and Logistic with each ridge (-gridR). The rows of each
+	 * group follow the order of the grid; the configurations abandoned after
+	 * some folds have fewer folds, and the best complete configuration of
+	 * each group is marked. With -nested, a last row per group reports the
+	 * nested cross-validation of the selection (see GridSearch.nested()),
+	 * since the F-Measure of the best configuration is measured on the folds
+	 * it is selected on. The rows of a group are streamed as soon as the
+	 * group completes.
+	 */
+	@SuppressWarnings("try")
+	static MyRecordList tune(DatasetPartition partition, int level, MyRecordList rl) throws Exception {
+		Instances dataSet = partition.getHeader();
+		
+		List<GridSearch.Config> configs = new ArrayList<GridSearch.Config>();
+		for (double c : gridC) {
+			for (double exponent : gridExponent) {
+				String options = svmOptions(c, exponent);
+				configs.add(new GridSearch.Config("SVM", Double.toString(c), Double.toString(exponent), "",
+						SMO.class.getName() + " " + options, () -> newSvm(options)));
+			}
+		}
+		for (double ridge : gridRidge) {
+			String options = logisticOptions(ridge);
+			configs.add(new GridSearch.Config("Logistic", "", "", Double.toString(ridge),
+					Logistic.class.getName() + " " + options, () -> newLogistic(options)));
+		}
+		// same seed and folds as crossValidate()
+		GridSearch search = new GridSearch(configs, 1, 10, tuneMinFolds);
 		
-		for (String ssd : datasetMap.keySet()) {
-		   	Instances ds = datasetMap.get(ssd);
-			
-			/**
-			 * Removing Attributes
-			 */
-			Filter filterRm = new Remove();
-			String optsFilterRm = StringUtils.join(top15Index.stream().limit(15).collect(Collectors.toList()), ",");
-			filterRm.setOptions(Utils.splitOptions("-V -R " + optsFilterRm + ",last"));
-			filterRm.setInputFormat(ds);
-			Instances dsTop15 = Filter.useFilter(ds, filterRm);
-			
-			/**
-			 * Classification with SVM
-			 */
-			Evaluation eval = doSvmClassification(dsTop15, "Abilitato");
-			String precision = roundDouble(eval.precision(0));
-			String recall = roundDouble(eval.recall(0));
-			String fMeasure = roundDouble(eval.fMeasure(0));
-			rl.addRecord(ssd, precision, recall, fMeasure);
-			LOG.info(ssd + " - Precision: " + precision + " - Recall: " + recall + " - F-Measure: " + fMeasure);
+		// CSV OUTPUT
+		rl.setHeader("Recruitment Field/Area", "Classifier", "C", "Exponent", "Ridge", "Folds", "Precision", "Recall", "F-Measure", "Best");
+		
+		List<String> groups = new ArrayList<String>();
+		List<int[]> groupRFs = new ArrayList<int[]>();
+		for (int rf = 0; rf < partition.numRFs(); rf++) {
+			groups.add(partition.rfName(rf));
+			groupRFs.add(new int[] {rf});
+		}
+		HashMap<String, ArrayList<Integer>> areaMapIndices = areaRFs(dataSet);
+		List<String> areas = new ArrayList<String>(areaMapIndices.keySet());
+		Collections.sort(areas);
+		for (String area : areas) {
+			groups.add(area);
+			groupRFs.add(areaMapIndices.get(area).stream().mapToInt(Integer::intValue).toArray());
+		}
+		
+		List<Callable<List<String[]>>> tasks = new ArrayList<Callable<List<String[]>>>();
+		long[] costs = new long[groups.size()];
+		for (int g = 0; g < groups.size(); g++) {
+			String group = groups.get(g);
+			int[] rfIndices = groupRFs.get(g);
+			costs[g] = rl.completed(group) != null ? 0 : partition.cost(rfIndices, level - 1);
 			
+			tasks.add(() -> {
+				if (rl.completed(group) != null) {
+					return Arrays.asList(rl.completed(group));
+				}
+				RunReport.setGroup(group);
+				FeatureView view;
+				try (RunReport.Timer t = RunReport.time("filter")) {
+					view = partition.group(rfIndices, level - 1, new int[] {1, 2, 3}, "Abilitato");
+				}
+				
+				List<GridSearch.Result> results;
+				try (RunReport.Timer t = RunReport.time("tune")) {
+					results = search.evaluate(view);
+				}
+				
+				int best = search.best(results);
+				List<String[]> records = new ArrayList<String[]>(results.size() + 1);
+				for (int i = 0; i < results.size(); i++) {
+					GridSearch.Result res = results.get(i);
+					GridSearch.Config config = res.config;
+					records.add(new String[] {group, config.classifier, config.c, config.exponent, config.ridge, Integer.toString(res.folds),
+							roundDouble(res.eval.precision(0)), roundDouble(res.eval.recall(0)), roundDouble(res.eval.fMeasure(0)), i == best ? "*" : ""});
+				}
+				LOG.info(group + " - Best: " + (best < 0 ? "none" : records.get(best)[1] + " " + String.join(" ", Arrays.copyOfRange(records.get(best), 2, 5)).trim()
+						+ " - F-Measure: " + records.get(best)[8]));
+				if (tuneNested) {
+					Evaluation nested;
+					try (RunReport.Timer t = RunReport.time("tune")) {
+						nested = search.nested(view);
+					}
+					records.add(new String[] {group, "Nested CV", "", "", "", "10",
+							roundDouble(nested.precision(0)), roundDouble(nested.recall(0)), roundDouble(nested.fMeasure(0)), ""});
+					LOG.info(group + " - Nested CV F-Measure: " + roundDouble(nested.fMeasure(0)));
+				}
+				rl.streamGroup(group, records.toArray(new String[0][]));
+				return records;
+			});
 		}
-		rl.sortByCol(3, MyRecordList.SortDESC);
-		rl.saveToFile(csvOutput);
+		
+		for (List<String[]> records : executor.invokeAll(tasks, costs)) {
+			for (String[] record : records) {
+				rl.addRecord(record);
+			}
+		}
+		return rl;
 	}
 
 	
-	private static void experiment1(String input, String output) throws Exception {
+	/**
+	 * Scores the rows of the given level of a dataset with the models of the
+	 * RFs and Areas kept in the model store (-models) by the RF and Area
+	 * analyses: each model predicts the class of the rows of its RF (or of the
+	 * RFs of its Area), and the models are run concurrently. The rows are
+	 * numbered from 1, in the order of the input file.
+	 */
+	@SuppressWarnings("try")
+	static MyRecordList predict(String input, int level) throws Exception {
+		List<ModelStore.Model> models;
+		try (RunReport.Timer t = RunReport.time("load-models")) {
+			models = modelStore.load(level, SVM_SPEC);
+		}
+		LOG.info(models.size() + " models found in " + modelStore.getDir());
+		
+		Instances dataSet = loadDataSet(input);
+		DatasetPartition partition;
+		try (RunReport.Timer t = RunReport.time("partition")) {
+			partition = new DatasetPartition(dataSet, 1, 2);
+		}
+		Instances header = partition.getHeader();
+		HashMap<String, ArrayList<Integer>> areaMapIndices = areaRFs(header);
+		
 		// CSV OUTPUT
 		MyRecordList rl = new MyRecordList();
-		rl.setHeader("Recruitment Field/Area", "Approach", "Precision", "Recall", "F-Measure");
-		
-		String fJ1_01B1 = "01B1_jensen1.arff";
-		String fJ8_01B1 = "01B1_jensen8.arff";
-		String fSVM_01B1 = "01B1_svm.arff";
-		String fJ1_13A1 = "13A1_jensen1.arff";
-		String fJ8_13A1 = "13A1_jensen8.arff";
-		String fSVM_13A1 = "13A1_svm.arff";
-		String fJ1_01 = "01_jensen1.arff";
-		String fJ8_01 = "01_jensen8.arff";
-		String fSVM_01 = "01_svm.arff";
-		String fJ1_13 = "13_jensen1.arff";
-		String fJ8_13 = "13_jensen8.arff";
-		String fSVM_13 = "13_svm.arff";
-		
-		/*
-		 * RF: 01/B1 (Informatics)
-		 */
-		DataSource dataSource = new DataSource(input + File.separator + fJ1_01B1);
-		Instances dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		Evaluation eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("01/B1", "JLOG-1", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("01/B1 (JLOG-1): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-		
-		dataSource = new DataSource(input + File.separator + fJ8_01B1);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("01/B1", "JLOG-8", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("01/B1 (JLOG-8): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-
-		dataSource = new DataSource(input + File.separator + fSVM_01B1);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doSvmClassification(dataSet, "Abilitato");
-		rl.addRecord("01/B1", "SVM", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("01/B1 (SVM): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
+		rl.setHeader("Recruitment Field/Area", "Row", "Prediction");
 		
+		List<Callable<List<String[]>>> tasks = new ArrayList<Callable<List<String[]>>>();
+		long[] costs = new long[models.size()];
+		for (ModelStore.Model model : models) {
+			int[] rfIndices;
+			if (model.kind.equals("RF")) {
+				int rf = header.attribute(1).indexOfValue(model.group);
+				rfIndices = rf < 0 ? new int[0] : new int[] {rf};
+			} else {
+				ArrayList<Integer> rfList = areaMapIndices.get(model.group);
+				rfIndices = rfList == null ? new int[0] : rfList.stream().mapToInt(Integer::intValue).toArray();
+			}
+			costs[tasks.size()] = partition.cost(rfIndices, level - 1);
+			
+			tasks.add(() -> {
+				RunReport.setGroup(model.group);
+				int[] rows = partition.rows(rfIndices, level - 1);
+				Instances data;
+				try (RunReport.Timer t = RunReport.time("filter")) {
+					data = partition.group(rfIndices, level - 1, new int[] {1, 2, 3}, "Abilitato").toInstances();
+				}
+				if (!model.header.equalHeaders(data)) {
+					throw new IllegalArgumentException("The attributes of " + input + " do not match the model of " + model.group + ": " + model.header.equalHeadersMsg(data));
+				}
 				
-		/*
-		 * RF: 13/A1 (Economics)
-		 */
-		dataSource = new DataSource(input + File.separator + fJ1_13A1);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("13/A1", "JLOG-1", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("13/A1 (JLOG-1): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-		
-		dataSource = new DataSource(input + File.separator + fJ8_13A1);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("13/A1", "JLOG-8", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("13/A1 (JLOG-8): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-
-		dataSource = new DataSource(input + File.separator + fSVM_13A1);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doSvmClassification(dataSet, "Abilitato");
-		rl.addRecord("13/A1", "SVM", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("13/A1 (SVM): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-
-		/*
-		 * Area: 01 (Mathematics and Computer Science) 
-		 */
-		dataSource = new DataSource(input + File.separator + fJ1_01);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("01", "JLOG-1", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("01 (JLOG-1): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-		
-		dataSource = new DataSource(input + File.separator + fJ8_01);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("01", "JLOG-8", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("01 (JLOG-8): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-
-		dataSource = new DataSource(input + File.separator + fSVM_01);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doSvmClassification(dataSet, "Abilitato");
-		rl.addRecord("01", "SVM", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("01 (SVM): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-
-		/*
-		 * Area: 13 (Economics and Statistics)
-		 */
-		dataSource = new DataSource(input + File.separator + fJ1_13);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("13", "JLOG-1", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("13 (JLOG-1): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-		
-		dataSource = new DataSource(input + File.separator + fJ8_13);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("13", "JLOG-8", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("13 (JLOG-8): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-
-		dataSource = new DataSource(input + File.separator + fSVM_13);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doSvmClassification(dataSet, "Abilitato");
-		rl.addRecord("13", "SVM", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("13 (SVM): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
+				List<String[]> records = new ArrayList<String[]>(rows.length);
+				try (RunReport.Timer t = RunReport.time("predict")) {
+					for (int r = 0; r < rows.length; r++) {
+						double predicted = model.classifier.classifyInstance(data.instance(r));
+						String label = Utils.isMissingValue(predicted) ? "?" : data.classAttribute().value((int) predicted);
+						records.add(new String[] {model.group, Integer.toString(rows[r] + 1), label});
+					}
+				}
+				return records;
+			});
+		}
+		
+		for (List<String[]> records : executor.invokeAll(tasks, costs)) {
+			for (String[] record : records) {
+				rl.addRecord(record);
+			}
+		}
+		return rl;
+	}
+	
+	
+	private static void experiment1(String input, String output) throws Exception {
+		save(experiment1(input), output);
+	}
+	
 
-		rl.saveToFile(output);
+	/**
+	 * The rows of experiment #1, on the ARFF files of the given folder.
+	 */
+	static MyRecordList experiment1(String input) throws Exception {
+		return new ExperimentPipeline(EXPERIMENT1).run(input, "Recruitment Field/Area", "Approach", "Precision", "Recall", "F-Measure");
 	}
 	
 
 	private static void experiment2(String input, String output) throws Exception {
-		// CSV OUTPUT
-		MyRecordList rl = new MyRecordList();
-		rl.setHeader("Recruitment Field", "Approach", "Precision", "Recall", "F-Measure");
-		
-		String fTregella_05E2 = "05E2_tregella.arff";
-		String fSVM_05E2 = "05E2_svm.arff";
-		String fTregella_13A1 = "13A1_tregella.arff";
-		String fSVM_13A1 = "13A1_svm.arff";
-		
-		/*
-		 * RF: 05/E2 (Molecular biology)
-		 */
-		DataSource dataSource = new DataSource(input + File.separator + fTregella_05E2);
-		Instances dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		Evaluation eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("05/E2", "T-LR", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("05/E2 (T-LR): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-		
-		eval = doSvmClassification(dataSet, "Abilitato");
-		rl.addRecord("05/E2", "T-SVM", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("05/E2 (T-SVM): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-		
-		dataSource = new DataSource(input + File.separator + fSVM_05E2);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doSvmClassification(dataSet, "Abilitato");
-		rl.addRecord("05/E2", "OUR-SVM", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("05/E2 (OUR-SVM): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
+		save(experiment2(input), output);
+	}
+	
+
+	/**
+	 * The rows of experiment #2, on the ARFF files of the given folder.
+	 */
+	@SuppressWarnings("try")
+	static MyRecordList experiment2(String input) throws Exception {
+		return new ExperimentPipeline(EXPERIMENT2).run(input, "Recruitment Field", "Approach", "Precision", "Recall", "F-Measure");
+	}
 
 
-		/*
-		 * RF: 13/A1 (Economics)
+	/**
+	 * The features selected by CFS on an RF: only the attributes and the size
+	 * of its dataset are kept, its rows are loaded again (see group()) when
+	 * they are cross-validated, so that with -stream the rows of a single
+	 * group are in memory at a time.
+	 */
+	private static class CfsResult {
+		final String rf;
+		final int index;
+		final Instances header;
+		final int numRows;
+		final List<Integer> selected;
+		
+		CfsResult(String rf, int index, FeatureView dataset, List<Integer> selected) {
+			this.rf = rf;
+			this.index = index;
+			this.header = dataset.header();
+			this.numRows = dataset.numRows();
+			this.selected = selected;
+		}
+		
+		/**
+		 * The rows of the RF, without its attribute, as given to CFS.
 		 */
-		dataSource = new DataSource(input + File.separator + fTregella_13A1);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doLogisticClassification(dataSet, "Abilitato");
-		rl.addRecord("13/A1", "T-LR", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("13/A1 (T-LR): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-		
-		eval = doSvmClassification(dataSet, "Abilitato");
-		rl.addRecord("13/A1", "T-SVM", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("13/A1 (T-SVM): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
-
-		dataSource = new DataSource(input + File.separator + fSVM_13A1);
-		dataSet = dataSource.getDataSet();
-		dataSet.setClass(dataSet.attribute("Abilitato"));
-		eval = doSvmClassification(dataSet, "Abilitato");
-		rl.addRecord("13/A1", "OUR-SVM", roundDouble(eval.precision(0)), roundDouble(eval.recall(0)), roundDouble(eval.fMeasure(0)));
-		LOG.info("13/A1 (OUR-SVM): " + roundDouble(eval.precision(0)) + " - " + roundDouble(eval.recall(0)) + " - " + roundDouble(eval.fMeasure(0)));
+		@SuppressWarnings("try")
+		FeatureView group(DatasetPartition partition, int level) throws IOException {
+			try (RunReport.Timer t = RunReport.time("filter")) {
+				return partition.group(new int[] {index}, level - 1, new int[] {1}, "Abilitato");
+			}
+		}
+	}
 
-		rl.saveToFile(output);
+	
+	/**
+	 * An operation to perform, with its input, output and level.
+	 */
+	private static class Job {
+		String input = "dataset-ASN-2012.arff";
+		String output = "output.csv";
+		String operation = "RF";
+		int level = 1;
+		
+		boolean usesDataSet() {
+			return operation.equals("RF") || operation.equals("Area") || operation.equals("FeatureSel") || operation.equals("FeatureCurve") || operation.equals("Screen") || operation.equals("Tune");
+		}
+		
+		Job copy() {
+			Job job = new Job();
+			job.input = input;
+			job.output = output;
+			job.operation = operation;
+			job.level = level;
+			return job;
+		}
 	}
 }
@@ -0,0 +1,182 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Append-only journal of the groups (RFs, Areas, ...) completed by an
+ * analysis, stored next to its output (&lt;FILE&gt;.journal), so that a run that
+ * is killed can be restarted without analysing the completed groups again.
+ *
+ * The first line of the journal holds a fingerprint of the analysis (the
+ * operation, the level, the input file and the options that change the
+ * results): a journal with another fingerprint is discarded. Each following
+ * line is a CSV record with the key of a group, followed by the length and
+ * the values of each of its rows. A last line without newline (the process
+ * was killed while writing it) is ignored, and cut from the file before the
+ * new entries are appended.
+ *
+ * The entries are written to the file as soon as they are added, and forced
+ * to the disk in batches (every BATCH entries or SYNC_MS milliseconds), so
+ * that the journal survives a crash of the process at no cost, and a crash of
+ * the machine losing at most the last batch.
+ */
+public class Checkpoint implements Closeable {
+
+	private static final String MAGIC = "asn-journal";
+	private static final int VERSION = 1;
+	private static final int BATCH = 16;
+	private static final long SYNC_MS = 5000;
+
+	private final File file;
+	private final HashMap<String, String[][]> completed = new HashMap<String, String[][]>();
+	private FileOutputStream stream;
+	private Writer writer;
+	private CSVPrinter printer;
+	private int pending;
+	private long lastSync;
+	// the length of the complete lines read from the journal
+	private long validLength;
+
+
+	/**
+	 * Opens the journal, keeping its entries if it was written by an analysis
+	 * with the same fingerprint.
+	 */
+	public Checkpoint(File file, String fingerprint) throws IOException {
+		this.file = file;
+		boolean resume = file.exists() && read(fingerprint);
+		if (!resume) {
+			completed.clear();
+		}
+		stream = new FileOutputStream(file, resume);
+		if (resume) {
+			// the next entry must not be appended to the bytes of a partial line
+			stream.getChannel().truncate(validLength);
+		}
+		writer = new OutputStreamWriter(new BufferedOutputStream(stream), StandardCharsets.UTF_8);
+		printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
+		if (!resume) {
+			printer.printRecord(MAGIC, Integer.toString(VERSION), fingerprint);
+			sync();
+		} else if (!completed.isEmpty()) {
+			AsnAnalysis.LOG.info("Resuming from " + file + " (" + completed.size() + " groups completed)");
+		}
+		lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * The rows of a group completed by a previous run, or null.
+	 */
+	public synchronized String[][] completed(String key) {
+		return completed.get(key);
+	}
+
+	/**
+	 * Adds the rows of a completed group.
+	 */
+	public synchronized void add(String key, String[]... records) throws IOException {
+		List<String> values = new ArrayList<String>();
+		values.add(key);
+		for (String[] record : records) {
+			values.add(Integer.toString(record.length));
+			for (String value : record) {
+				values.add(value);
+			}
+		}
+		printer.printRecord(values);
+		writer.flush();
+		completed.put(key, records);
+		pending++;
+		if (pending >= BATCH || System.currentTimeMillis() - lastSync >= SYNC_MS) {
+			sync();
+		}
+	}
+
+	private void sync() throws IOException {
+		writer.flush();
+		stream.getFD().sync();
+		pending = 0;
+		lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * Forces the last entries to the disk and closes the journal.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (printer != null) {
+			sync();
+			printer.close();
+			printer = null;
+		}
+	}
+
+	/**
+	 * Closes and deletes the journal, once the output of the analysis is
+	 * saved.
+	 */
+	public synchronized void delete() throws IOException {
+		close();
+		Files.deleteIfExists(file.toPath());
+	}
+
+	/**
+	 * Reads the entries of the journal, and returns whether its fingerprint
+	 * is the given one.
+	 */
+	private boolean read(String fingerprint) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		int end = bytes.length;
+		while (end > 0 && bytes[end - 1] != '\n') {
+			end--;
+		}
+		validLength = end;
+		String content = new String(bytes, 0, end, StandardCharsets.UTF_8);
+		try (CSVParser parser = new CSVParser(new StringReader(content), CSVFormat.DEFAULT)) {
+			boolean first = true;
+			for (CSVRecord line : parser) {
+				if (first) {
+					if (line.size() != 3 || !line.get(0).equals(MAGIC) || !line.get(1).equals(Integer.toString(VERSION))
+							|| !line.get(2).equals(fingerprint)) {
+						return false;
+					}
+					first = false;
+					continue;
+				}
+				List<String[]> records = new ArrayList<String[]>();
+				int pos = 1;
+				while (pos < line.size()) {
+					int length = Integer.parseInt(line.get(pos++));
+					String[] record = new String[length];
+					for (int i = 0; i < length; i++) {
+						record[i] = line.get(pos++);
+					}
+					records.add(record);
+				}
+				completed.put(line.get(0), records.toArray(new String[0][]));
+			}
+			return !first;
+		} catch (RuntimeException e) {
+			AsnAnalysis.LOG.info("Warning: ignoring the corrupted journal " + file + " (" + e + ")");
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,214 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.core.Instances;
+
+/**
+ * Runs the cross-validations of the analyses on remote workers (-nodes), i.e.
+ * other JVMs started with -op Worker, instead of the local threads.
+ *
+ * Each cross-validation is a request on its own connection to a worker: the
+ * rows of the group (its slice of the dataset) are sent with the classifier,
+ * the storage of the Gram matrix (-gram, empty for none) and the kernel cache
+ * (-kernelcache, split among the threads of the worker) of the coordinator,
+ * the seeds and the number of folds, and the worker answers with the
+ * confusion matrix of each seed. The slice is sent as the ARFF header of the
+ * group followed by the binary values and weight of each row:
+ * <pre>
+ * request:  int magic ("ASNW"), int version, UTF classifier spec,
+ *           UTF Gram matrix storage, long kernel cache (bytes), int folds,
+ *           int seeds, int seed..., int header length, header (UTF-8 ARFF),
+ *           int class index, int rows, int attributes,
+ *           for each row: double value..., double weight
+ * response: int status (0 = ok), then int seeds, for each seed int classes
+ *           and the confusion matrix by rows; or UTF error message
+ * </pre>
+ *
+ * A worker runs at most REQUESTS_PER_NODE requests at a time. When a worker
+ * cannot be reached within CONNECT_TIMEOUT_MS, the connection breaks, or the
+ * worker does not answer a request within the request timeout (-nodetimeout,
+ * e.g. it hangs or its host is down without resetting the connection), it is
+ * no longer used and its requests are sent to the other workers; when no
+ * worker is left, the cross-validations are run locally.
+ */
+public class Coordinator {
+
+	static final int MAGIC = 0x41534E57; // "ASNW"
+	static final int VERSION = 2;
+	static final int OK = 0;
+	static final int ERROR = 1;
+
+	private static final int REQUESTS_PER_NODE = 2;
+	private static final int CONNECT_TIMEOUT_MS = 10000;
+
+	private final List<Node> nodes = new ArrayList<Node>();
+	private volatile int requestTimeoutMs;
+
+
+	private static class Node {
+		final InetSocketAddress address;
+		int running;
+		boolean lost;
+
+		Node(InetSocketAddress address) {
+			this.address = address;
+		}
+	}
+
+
+	/**
+	 * @param nodes the addresses of the workers, as host:port
+	 * @param requestTimeoutMs the time a worker may take to answer a request
+	 * (i.e. to cross-validate a group), after which it is considered lost
+	 */
+	public Coordinator(List<String> nodes, int requestTimeoutMs) {
+		this.requestTimeoutMs = requestTimeoutMs;
+		for (String node : nodes) {
+			int colon = node.lastIndexOf(':');
+			if (colon < 0) {
+				throw new IllegalArgumentException("The address of a worker must be host:port: " + node);
+			}
+			this.nodes.add(new Node(new InetSocketAddress(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1)))));
+		}
+	}
+
+	public void setRequestTimeout(int requestTimeoutMs) {
+		this.requestTimeoutMs = requestTimeoutMs;
+	}
+
+	/**
+	 * The confusion matrices of the cross-validations of a group with the
+	 * given seeds, computed by a worker, or null if all the workers are lost.
+	 * 
+	 * @param gramStorage the values of the Gram matrix of the group (see
+	 * -gram), or null for none
+	 * @param kernelCache the memory (in bytes) the kernel values may use on
+	 * the worker, split among its threads
+	 */
+	@SuppressWarnings("try")
+	public List<double[][]> crossValidate(FeatureView view, String classifierSpec, String gramStorage, long kernelCache, List<Integer> seeds, int folds) throws Exception {
+		return GroupExecutor.blocking(() -> {
+			Node node;
+			while ((node = acquire()) != null) {
+				try (RunReport.Timer t = RunReport.time("cv/remote")) {
+					return request(node, view, classifierSpec, gramStorage, kernelCache, seeds, folds);
+				} catch (SocketTimeoutException e) {
+					lose(node, new IOException("no answer within the timeout", e));
+				} catch (IOException e) {
+					lose(node, e);
+				} finally {
+					release(node);
+				}
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * The worker with the fewest running requests, waiting until one is
+	 * free, or null if all the workers are lost.
+	 */
+	private synchronized Node acquire() throws InterruptedException {
+		while (true) {
+			Node best = null;
+			boolean alive = false;
+			for (Node node : nodes) {
+				if (node.lost) {
+					continue;
+				}
+				alive = true;
+				if (node.running < REQUESTS_PER_NODE && (best == null || node.running < best.running)) {
+					best = node;
+				}
+			}
+			if (!alive) {
+				return null;
+			}
+			if (best != null) {
+				best.running++;
+				return best;
+			}
+			wait();
+		}
+	}
+
+	private synchronized void release(Node node) {
+		node.running--;
+		notifyAll();
+	}
+
+	private synchronized void lose(Node node, IOException e) {
+		if (!node.lost) {
+			node.lost = true;
+			AsnAnalysis.LOG.info("Warning: the worker " + node.address + " is lost (" + e + "), its groups are sent to the other workers");
+		}
+	}
+
+	private List<double[][]> request(Node node, FeatureView view, String classifierSpec, String gramStorage, long kernelCache, List<Integer> seeds, int folds) throws IOException {
+		try (Socket socket = new Socket()) {
+			socket.connect(node.address, CONNECT_TIMEOUT_MS);
+			socket.setKeepAlive(true);
+			socket.setSoTimeout(requestTimeoutMs);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(classifierSpec);
+			out.writeUTF(gramStorage == null ? "" : gramStorage);
+			out.writeLong(kernelCache);
+			out.writeInt(folds);
+			out.writeInt(seeds.size());
+			for (int seed : seeds) {
+				out.writeInt(seed);
+			}
+			writeSlice(out, view);
+			out.flush();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			if (in.readInt() != OK) {
+				// an error of the analysis, not of the worker
+				throw new IllegalStateException("The worker " + node.address + " failed: " + in.readUTF());
+			}
+			int numSeeds = in.readInt();
+			List<double[][]> res = new ArrayList<double[][]>(numSeeds);
+			for (int s = 0; s < numSeeds; s++) {
+				int numClasses = in.readInt();
+				double[][] matrix = new double[numClasses][numClasses];
+				for (int i = 0; i < numClasses; i++) {
+					for (int j = 0; j < numClasses; j++) {
+						matrix[i][j] = in.readDouble();
+					}
+				}
+				res.add(matrix);
+			}
+			return res;
+		}
+	}
+
+	private static void writeSlice(DataOutputStream out, FeatureView view) throws IOException {
+		Instances header = view.header();
+		byte[] arff = header.toString().getBytes(StandardCharsets.UTF_8);
+		out.writeInt(arff.length);
+		out.write(arff);
+		out.writeInt(header.classIndex());
+		out.writeInt(view.numRows());
+		out.writeInt(view.numAttributes());
+		for (int pos = 0; pos < view.numRows(); pos++) {
+			for (int i = 0; i < view.numAttributes(); i++) {
+				out.writeDouble(view.value(pos, i));
+			}
+			out.writeDouble(view.weight(pos));
+		}
+	}
+
+}
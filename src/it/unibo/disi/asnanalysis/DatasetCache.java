@@ -0,0 +1,205 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Binary columnar cache of the ARFF datasets.
+ *
+ * The first time an ARFF file is loaded, its content is stored next to it in
+ * a ".bin" file made of a header (relation, attributes and nominal values,
+ * size and modification time of the source file) followed by one column of
+ * doubles per attribute. Later loads memory-map the cache instead of parsing
+ * the text file, as long as the size and modification time of the source are
+ * unchanged.
+ *
+ * Only numeric and nominal attributes are supported: datasets with other
+ * kinds of attributes are loaded from the ARFF file and never cached.
+ */
+public class DatasetCache {
+
+	static final String SUFFIX = ".bin";
+
+	private static final int MAGIC = 0x41534E43; // "ASNC"
+	private static final int VERSION = 1;
+
+	private static final byte TYPE_NUMERIC = 0;
+	private static final byte TYPE_NOMINAL = 1;
+
+
+	/**
+	 * Loads the given ARFF file, using (and refreshing, if stale) its cache.
+	 */
+	public static Instances load(String arffFile) throws Exception {
+		File source = new File(arffFile);
+		File cache = new File(arffFile + SUFFIX);
+
+		if (cache.isFile()) {
+			try {
+				Instances dataSet = read(cache, source.length(), source.lastModified());
+				if (dataSet != null) {
+					return dataSet;
+				}
+			} catch (IOException | RuntimeException e) {
+				AsnAnalysis.LOG.info("Warning: ignoring the unreadable cache " + cache + " (" + e + ")");
+			}
+		}
+
+		Instances dataSet = ArffParser.load(arffFile);
+		if (isCacheable(dataSet)) {
+			try {
+				write(dataSet, cache, source.length(), source.lastModified());
+			} catch (IOException e) {
+				AsnAnalysis.LOG.info("Warning: unable to write the cache " + cache + " (" + e + ")");
+			}
+		}
+		return dataSet;
+	}
+
+	static boolean isCacheable(Instances dataSet) {
+		for (int i = 0; i < dataSet.numAttributes(); i++) {
+			Attribute attr = dataSet.attribute(i);
+			if (!attr.isNumeric() && !attr.isNominal()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the cache to a temporary file that is then moved in place, so
+	 * that concurrent readers never see a partial cache.
+	 */
+	static void write(Instances dataSet, File cache, long sourceSize, long sourceModified) throws IOException {
+		Path tmp = Files.createTempFile(cache.getAbsoluteFile().getParentFile().toPath(), cache.getName(), ".tmp");
+		try {
+			try (OutputStream os = Files.newOutputStream(tmp);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+				int numAttributes = dataSet.numAttributes();
+				int numInstances = dataSet.numInstances();
+
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(sourceSize);
+				out.writeLong(sourceModified);
+				writeString(out, dataSet.relationName());
+				out.writeInt(numAttributes);
+				out.writeInt(dataSet.classIndex());
+				for (int i = 0; i < numAttributes; i++) {
+					Attribute attr = dataSet.attribute(i);
+					writeString(out, attr.name());
+					if (attr.isNominal()) {
+						out.writeByte(TYPE_NOMINAL);
+						out.writeInt(attr.numValues());
+						for (int v = 0; v < attr.numValues(); v++) {
+							writeString(out, attr.value(v));
+						}
+					} else {
+						out.writeByte(TYPE_NUMERIC);
+					}
+				}
+				out.writeInt(numInstances);
+
+				for (int r = 0; r < numInstances; r++) {
+					out.writeDouble(dataSet.instance(r).weight());
+				}
+				for (int i = 0; i < numAttributes; i++) {
+					for (int r = 0; r < numInstances; r++) {
+						out.writeDouble(dataSet.instance(r).value(i));
+					}
+				}
+			}
+			Files.move(tmp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Reads the cache, or returns null if it does not match the source file.
+	 */
+	static Instances read(File cache, long sourceSize, long sourceModified) throws IOException {
+		try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+				return null;
+			}
+			if (buf.getLong() != sourceSize || buf.getLong() != sourceModified) {
+				return null;
+			}
+
+			String relation = readString(buf);
+			int numAttributes = buf.getInt();
+			int classIndex = buf.getInt();
+			ArrayList<Attribute> attributes = new ArrayList<Attribute>(numAttributes);
+			for (int i = 0; i < numAttributes; i++) {
+				String name = readString(buf);
+				byte type = buf.get();
+				if (type == TYPE_NOMINAL) {
+					int numValues = buf.getInt();
+					List<String> values = new ArrayList<String>(numValues);
+					for (int v = 0; v < numValues; v++) {
+						values.add(readString(buf));
+					}
+					attributes.add(new Attribute(name, values));
+				} else {
+					attributes.add(new Attribute(name));
+				}
+			}
+			int numInstances = buf.getInt();
+
+			DoubleBuffer data = buf.asDoubleBuffer();
+			double[] weights = new double[numInstances];
+			data.get(weights);
+			double[][] rows = new double[numInstances][numAttributes];
+			double[] column = new double[numInstances];
+			for (int i = 0; i < numAttributes; i++) {
+				data.get(column);
+				for (int r = 0; r < numInstances; r++) {
+					rows[r][i] = column[r];
+				}
+			}
+
+			Instances dataSet = new Instances(relation, attributes, numInstances);
+			for (int r = 0; r < numInstances; r++) {
+				Instance inst = new DenseInstance(weights[r], rows[r]);
+				dataSet.add(inst);
+			}
+			dataSet.setClassIndex(classIndex);
+			return dataSet;
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buf) {
+		byte[] bytes = new byte[buf.getInt()];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,196 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * Index of the rows of a dataset grouped by (Recruitment Field, level),
+ * built with a single pass over the data.
+ *
+ * The subsets returned by this class contain the same instances, in the same
+ * order, as the ones obtained by filtering the dataset with RemoveWithValues
+ * ("-C rfColumn -L rfIndices -V -M" followed by "-C levelColumn -L level -V -M"),
+ * i.e. rows with a missing RF or level are discarded.
+ *
+ * The values of the dataset are kept in a FeatureMatrix, so that the loaded
+ * Instances can be released once the partition is built (see SpilledPartition
+ * for a partition whose rows are kept on disk).
+ */
+public class DatasetPartition {
+
+	private final Instances header;
+	private final FeatureMatrix matrix;
+	private final int rfAttrIndex;
+	private final int levelAttrIndex;
+	private final int[][][] buckets;
+
+
+	/**
+	 * @param dataSet the dataset to partition
+	 * @param rfAttrIndex the (0-based) index of the nominal RF attribute
+	 * @param levelAttrIndex the (0-based) index of the nominal level attribute
+	 */
+	public DatasetPartition(Instances dataSet, int rfAttrIndex, int levelAttrIndex) {
+		this.matrix = new FeatureMatrix(dataSet);
+		this.header = matrix.getHeader();
+		this.rfAttrIndex = rfAttrIndex;
+		this.levelAttrIndex = levelAttrIndex;
+
+		int numRFs = dataSet.attribute(rfAttrIndex).numValues();
+		int numLevels = dataSet.attribute(levelAttrIndex).numValues();
+
+		// first pass on the nominal codes: count the rows of each group
+		int[][] sizes = new int[numRFs][numLevels];
+		int numInstances = matrix.numRows();
+		int[] rfCodes = new int[numInstances];
+		int[] levelCodes = new int[numInstances];
+		for (int i = 0; i < numInstances; i++) {
+			double rfValue = matrix.value(i, rfAttrIndex);
+			double levelValue = matrix.value(i, levelAttrIndex);
+			if (Double.isNaN(rfValue) || Double.isNaN(levelValue)) {
+				rfCodes[i] = -1;
+				continue;
+			}
+			rfCodes[i] = (int) rfValue;
+			levelCodes[i] = (int) levelValue;
+			sizes[rfCodes[i]][levelCodes[i]]++;
+		}
+
+		buckets = new int[numRFs][numLevels][];
+		int[][] filled = new int[numRFs][numLevels];
+		for (int rf = 0; rf < numRFs; rf++) {
+			for (int level = 0; level < numLevels; level++) {
+				buckets[rf][level] = new int[sizes[rf][level]];
+			}
+		}
+		for (int i = 0; i < numInstances; i++) {
+			int rf = rfCodes[i];
+			if (rf < 0) {
+				continue;
+			}
+			int level = levelCodes[i];
+			buckets[rf][level][filled[rf][level]++] = i;
+		}
+	}
+
+	/**
+	 * A partition whose rows are not kept in memory.
+	 *
+	 * @param buckets the indices of the rows of each RF and level
+	 */
+	protected DatasetPartition(Instances header, int rfAttrIndex, int levelAttrIndex, int[][][] buckets) {
+		this.header = header;
+		this.matrix = null;
+		this.rfAttrIndex = rfAttrIndex;
+		this.levelAttrIndex = levelAttrIndex;
+		this.buckets = buckets;
+	}
+
+	/**
+	 * The values of the partitioned dataset, or null if they are not kept in
+	 * memory.
+	 */
+	public FeatureMatrix getMatrix() {
+		return matrix;
+	}
+
+	/**
+	 * The attributes of the partitioned dataset (no rows).
+	 */
+	public Instances getHeader() {
+		return header;
+	}
+
+	public int numRFs() {
+		return buckets.length;
+	}
+
+	public String rfName(int rf) {
+		return getHeader().attribute(rfAttrIndex).value(rf);
+	}
+
+	public int numLevels() {
+		return getHeader().attribute(levelAttrIndex).numValues();
+	}
+
+	/**
+	 * Indices (in ascending order) of the rows of the given RF and level.
+	 * The returned array must not be modified.
+	 */
+	public int[] rows(int rf, int level) {
+		return buckets[rf][level];
+	}
+
+	/**
+	 * Indices (in ascending order) of the rows of the given level that belong
+	 * to any of the given RFs, e.g. the RFs of an Area.
+	 */
+	public int[] rows(int[] rfs, int level) {
+		if (rfs.length == 1) {
+			return rows(rfs[0], level);
+		}
+		int size = 0;
+		for (int rf : rfs) {
+			size += buckets[rf][level].length;
+		}
+		int[] res = new int[size];
+		int pos = 0;
+		for (int rf : rfs) {
+			int[] bucket = buckets[rf][level];
+			System.arraycopy(bucket, 0, res, pos, bucket.length);
+			pos += bucket.length;
+		}
+		// buckets are disjoint, sorting restores the original order of the rows
+		Arrays.sort(res);
+		return res;
+	}
+
+	/**
+	 * The estimated cost of analysing the rows of the given level that belong
+	 * to any of the given RFs (rows x attributes), used to start the largest
+	 * groups first.
+	 */
+	public long cost(int[] rfs, int level) {
+		long size = 0;
+		for (int rf : rfs) {
+			size += buckets[rf][level].length;
+		}
+		return size * getHeader().numAttributes();
+	}
+
+	/**
+	 * The rows of the given level that belong to any of the given RFs, with
+	 * all the attributes but the removed ones (0-based).
+	 */
+	public FeatureView group(int[] rfs, int level, int[] removed, String className) throws IOException {
+		return matrix.viewWithout(rows(rfs, level), removed, className);
+	}
+
+	public Instances subset(int rf, int level) throws IOException {
+		return subset(rows(rf, level));
+	}
+
+	public Instances subset(int[] rfs, int level) throws IOException {
+		return subset(rows(rfs, level));
+	}
+
+	/**
+	 * A new dataset with the same header of the partitioned one, containing
+	 * (copies of) the given rows.
+	 */
+	public Instances subset(int[] rows) throws IOException {
+		Instances res = new Instances(getHeader(), rows.length);
+		for (int row : rows) {
+			double[] values = new double[matrix.numAttributes()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = matrix.value(row, i);
+			}
+			res.add(new DenseInstance(matrix.weight(row), values));
+		}
+		return res;
+	}
+
+}
@@ -0,0 +1,95 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import weka.core.Instances;
+
+/**
+ * The datasets kept in memory by the server (-op Serve): each input is loaded
+ * (and, for the RF, Area and FeatureSel analyses, partitioned) by the first
+ * request that reads it, and reused by the following ones. The requests that
+ * arrive while an input is being loaded wait for the same load. A failed load
+ * is not kept, so that it is retried by the next request.
+ *
+ * The datasets are shared by concurrent requests and must not be modified,
+ * apart from setting their class attribute (always "Abilitato").
+ */
+public class DatasetRegistry {
+
+	private final ConcurrentHashMap<String, FutureTask<DatasetPartition>> partitions = new ConcurrentHashMap<String, FutureTask<DatasetPartition>>();
+	private final ConcurrentHashMap<String, FutureTask<Instances>> dataSets = new ConcurrentHashMap<String, FutureTask<Instances>>();
+
+
+	/**
+	 * The partition by RF (column 2) and level (column 3) of the given input.
+	 */
+	public DatasetPartition partition(String input) throws Exception {
+		return get(partitions, input, () -> {
+			if (AsnAnalysis.streamInput) {
+				return SpilledPartition.load(input, 1, 2);
+			}
+			return new DatasetPartition(AsnAnalysis.readDataSet(input), 1, 2);
+		});
+	}
+
+	/**
+	 * The dataset of the given ARFF file.
+	 */
+	public Instances dataSet(String arffFile) throws Exception {
+		return get(dataSets, arffFile, () -> AsnAnalysis.readDataSet(arffFile));
+	}
+
+	/**
+	 * The inputs loaded so far.
+	 */
+	public List<String> inputs() {
+		List<String> res = new ArrayList<String>(partitions.keySet());
+		res.addAll(dataSets.keySet());
+		Collections.sort(res);
+		return res;
+	}
+
+	private static <T> T get(ConcurrentHashMap<String, FutureTask<T>> map, String key, Callable<T> loader) throws Exception {
+		FutureTask<T> task = new FutureTask<T>(loader);
+		FutureTask<T> loaded = map.putIfAbsent(key, task);
+		if (loaded == null) {
+			loaded = task;
+			task.run();
+		}
+		try {
+			return loaded.get();
+		} catch (ExecutionException e) {
+			map.remove(key, loaded);
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Deletes the temporary files of the partitions read with -stream.
+	 */
+	public void close() throws IOException {
+		for (FutureTask<DatasetPartition> task : partitions.values()) {
+			if (task.isDone()) {
+				try {
+					DatasetPartition partition = task.get();
+					if (partition instanceof SpilledPartition) {
+						((SpilledPartition) partition).close();
+					}
+				} catch (InterruptedException | ExecutionException e) {
+					// nothing to delete
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,199 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+/**
+ * Runs an experiment declared as a list of steps (group, approach, ARFF file,
+ * classifier), e.g. experiment #1 and #2, with the loading of the files
+ * overlapped with the training.
+ *
+ * The loader threads (LOADERS) parse the files in the order of their first
+ * step and put them in a bounded queue (PREFETCH datasets), so that at most
+ * LOADERS + PREFETCH datasets wait for the training. The training workers (one
+ * per thread of the analyses) take the datasets from the queue and
+ * cross-validate the classifiers of their steps, whose folds run on the
+ * threads of the analyses as usual. The rows are added in the order of the
+ * steps, whatever the order the datasets are trained.
+ */
+public class ExperimentPipeline {
+
+	private static final int LOADERS = 2;
+	private static final int PREFETCH = 2;
+	private static final String CLASS_NAME = "Abilitato";
+
+	/**
+	 * The classifiers of the experiments.
+	 */
+	public enum Learner {
+		LOGISTIC, SVM
+	}
+
+	/**
+	 * A row of an experiment: the evaluation of a classifier on an ARFF file
+	 * of the input folder.
+	 */
+	public static class Step {
+		final String group;
+		final String approach;
+		final String file;
+		final Learner learner;
+
+		public Step(String group, String approach, String file, Learner learner) {
+			this.group = group;
+			this.approach = approach;
+			this.file = file;
+			this.learner = learner;
+		}
+	}
+
+
+	/**
+	 * A file parsed by a loader, or the exception thrown while parsing it.
+	 */
+	private static class Loaded {
+		final String file;
+		final Instances dataSet;
+		final Exception error;
+
+		Loaded(String file, Instances dataSet, Exception error) {
+			this.file = file;
+			this.dataSet = dataSet;
+			this.error = error;
+		}
+	}
+
+
+	private final List<Step> steps;
+
+
+	public ExperimentPipeline(List<Step> steps) {
+		this.steps = steps;
+	}
+
+	/**
+	 * The rows of the experiment on the ARFF files of the given folder, one per
+	 * step in the order of the steps.
+	 */
+	public MyRecordList run(String input, String... header) throws Exception {
+		// the steps of each file, in the order of their first step
+		LinkedHashMap<String, List<Integer>> files = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < steps.size(); i++) {
+			files.computeIfAbsent(steps.get(i).file, f -> new ArrayList<Integer>()).add(i);
+		}
+		List<String> order = new ArrayList<String>(files.keySet());
+
+		BlockingQueue<Loaded> queue = new ArrayBlockingQueue<Loaded>(PREFETCH);
+		AtomicInteger nextLoad = new AtomicInteger();
+		AtomicInteger nextTake = new AtomicInteger();
+		Exception[] failure = new Exception[1];
+		String[][] rows = new String[steps.size()][];
+
+		AtomicInteger counter = new AtomicInteger();
+		ExecutorService loaders = Executors.newFixedThreadPool(Math.min(LOADERS, order.size()), r -> {
+			Thread t = new Thread(r, "asn-loader-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			for (int n = 0; n < Math.min(LOADERS, order.size()); n++) {
+				loaders.submit(RunReport.propagate(() -> {
+					int i;
+					while ((i = nextLoad.getAndIncrement()) < order.size()) {
+						String file = order.get(i);
+						RunReport.setGroup(file);
+						Loaded loaded;
+						if (failed(failure)) {
+							loaded = new Loaded(file, null, null);
+						} else {
+							try {
+								Instances dataSet = AsnAnalysis.loadDataSet(input + File.separator + file);
+								dataSet.setClass(dataSet.attribute(CLASS_NAME));
+								loaded = new Loaded(file, dataSet, null);
+							} catch (Exception e) {
+								loaded = new Loaded(file, null, e);
+							}
+						}
+						queue.put(loaded);
+					}
+					return null;
+				}));
+			}
+
+			// each worker takes datasets until all of them are taken; after a
+			// failure, the remaining ones are only drained
+			List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+			for (int n = 0; n < AsnAnalysis.executor.getNumThreads(); n++) {
+				workers.add(() -> {
+					while (nextTake.getAndIncrement() < order.size()) {
+						Loaded loaded = GroupExecutor.blocking(queue::take);
+						if (failed(failure)) {
+							continue;
+						}
+						try {
+							if (loaded.error != null) {
+								throw loaded.error;
+							}
+							RunReport.setGroup(loaded.file);
+							for (int i : files.get(loaded.file)) {
+								rows[i] = evaluate(steps.get(i), loaded.dataSet);
+							}
+						} catch (Exception e) {
+							synchronized (failure) {
+								if (failure[0] == null) {
+									failure[0] = e;
+								}
+							}
+						}
+					}
+					return null;
+				});
+			}
+			AsnAnalysis.executor.invokeAll(workers);
+		} finally {
+			loaders.shutdownNow();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+
+		MyRecordList rl = new MyRecordList();
+		rl.setHeader(header);
+		for (String[] row : rows) {
+			rl.addRecord(row);
+		}
+		return rl;
+	}
+
+	private static boolean failed(Exception[] failure) {
+		synchronized (failure) {
+			return failure[0] != null;
+		}
+	}
+
+	private static String[] evaluate(Step step, Instances dataSet) throws Exception {
+		Evaluation eval;
+		if (step.learner == Learner.LOGISTIC) {
+			eval = AsnAnalysis.doLogisticClassification(dataSet, CLASS_NAME);
+		} else {
+			eval = AsnAnalysis.doSvmClassification(dataSet, CLASS_NAME);
+		}
+		String precision = AsnAnalysis.roundDouble(eval.precision(0));
+		String recall = AsnAnalysis.roundDouble(eval.recall(0));
+		String fMeasure = AsnAnalysis.roundDouble(eval.fMeasure(0));
+		AsnAnalysis.LOG.info(step.group + " (" + step.approach + "): " + precision + " - " + recall + " - " + fMeasure);
+		return new String[] {step.group, step.approach, precision, recall, fMeasure};
+	}
+
+}
@@ -0,0 +1,295 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import weka.attributeSelection.CfsSubsetEval;
+import weka.core.ContingencyTables;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.Discretize;
+
+/**
+ * CfsSubsetEval with the correlations computed on int-coded columns and kept
+ * in a triangular cache, so that the merit of a subset only reads the
+ * correlations of its attributes.
+ *
+ * With a nominal class, CfsSubsetEval discretizes the dataset and correlates
+ * two attributes with the symmetrical uncertainty of their contingency table,
+ * counted on the Instance objects every time a pair is seen for the first
+ * time; evaluateSubset() then scans all the pairs of attributes of the
+ * dataset, whatever the size of the subset. Here the discretized values are
+ * read once into a column per attribute, the contingency tables are counted
+ * on the columns, and the merit is summed over the attributes of the subset
+ * only, in the same order: the merits, and therefore the attributes selected
+ * by the search, are exactly the same as the ones of CfsSubsetEval.
+ *
+ * With a numeric class, the evaluation is left to CfsSubsetEval.
+ */
+public class FastCfsSubsetEval extends CfsSubsetEval {
+
+	private static final long serialVersionUID = 1L;
+
+	private boolean delegate;
+	private int classIndex;
+	private int numAttribs;
+	private int numInstances;
+	private int[] numValues;    // the values of each attribute, plus one for missing values
+	private int[][] columns;    // the discretized values of each attribute, numValues - 1 if missing
+	private float[] corr;       // lower triangle of the correlation matrix, NaN if not computed yet
+
+
+	@Override
+	public void buildEvaluator(Instances data) throws Exception {
+		getCapabilities().testWithFail(data);
+		Instances train = new Instances(data);
+		train.deleteWithMissingClass();
+		delegate = train.classAttribute().isNumeric();
+		if (!delegate) {
+			Discretize disTransform = new Discretize();
+			disTransform.setUseBetterEncoding(true);
+			disTransform.setInputFormat(train);
+			train = Filter.useFilter(train, disTransform);
+			for (int i = 0; i < train.numAttributes(); i++) {
+				if (!train.attribute(i).isNominal()) {
+					delegate = true;
+				}
+			}
+		}
+		if (delegate) {
+			columns = null;
+			corr = null;
+			super.buildEvaluator(data);
+			return;
+		}
+
+		classIndex = train.classIndex();
+		numAttribs = train.numAttributes();
+		numInstances = train.numInstances();
+		numValues = new int[numAttribs];
+		columns = new int[numAttribs][numInstances];
+		for (int i = 0; i < numAttribs; i++) {
+			numValues[i] = train.attribute(i).numValues() + 1;
+		}
+		for (int r = 0; r < numInstances; r++) {
+			double[] values = train.instance(r).toDoubleArray();
+			for (int i = 0; i < numAttribs; i++) {
+				columns[i][r] = Utils.isMissingValue(values[i]) ? numValues[i] - 1 : (int) values[i];
+			}
+		}
+		corr = new float[numAttribs * (numAttribs + 1) / 2];
+		Arrays.fill(corr, Float.NaN);
+		for (int i = 0; i < numAttribs; i++) {
+			corr[i * (i + 1) / 2 + i] = 1.0f;
+		}
+	}
+
+	/**
+	 * The correlation of two attributes, computed on first use.
+	 */
+	private double correlation(int att1, int att2) {
+		int larger = Math.max(att1, att2);
+		int smaller = Math.min(att1, att2);
+		int pos = larger * (larger + 1) / 2 + smaller;
+		if (Float.isNaN(corr[pos])) {
+			corr[pos] = (float) symmUncertCorr(att1, att2);
+		}
+		return corr[pos];
+	}
+
+	@Override
+	public double evaluateSubset(BitSet subset) throws Exception {
+		if (delegate) {
+			return super.evaluateSubset(subset);
+		}
+		// the standard deviations of CfsSubsetEval are all 1 with a nominal
+		// class, and the sums are done in the same order as there
+		double num = 0.0;
+		double denom = 0.0;
+		for (int i = subset.nextSetBit(0); i >= 0 && i < numAttribs; i = subset.nextSetBit(i + 1)) {
+			if (i != classIndex) {
+				num += correlation(i, classIndex);
+			}
+		}
+		for (int i = subset.nextSetBit(0); i >= 0 && i < numAttribs; i = subset.nextSetBit(i + 1)) {
+			if (i == classIndex) {
+				continue;
+			}
+			denom += 1.0;
+			for (int j = subset.nextSetBit(0); j >= 0 && j < i; j = subset.nextSetBit(j + 1)) {
+				denom += 2.0 * correlation(i, j);
+			}
+		}
+		if (denom < 0.0) {
+			denom *= -1.0;
+		}
+		if (denom == 0.0) {
+			return 0.0;
+		}
+		double merit = num / Math.sqrt(denom);
+		if (merit < 0.0) {
+			merit *= -1.0;
+		}
+		return merit;
+	}
+
+	/**
+	 * CfsSubsetEval.symmUncertCorr(), on the columns.
+	 */
+	private double symmUncertCorr(int att1, int att2) {
+		boolean flag = att1 == classIndex || att2 == classIndex;
+		int ni = numValues[att1];
+		int nj = numValues[att2];
+		int[] col1 = columns[att1];
+		int[] col2 = columns[att2];
+		int[] intCounts = new int[ni * nj];
+		for (int r = 0; r < numInstances; r++) {
+			intCounts[col1[r] * nj + col2[r]]++;
+		}
+		double[][] counts = new double[ni][nj];
+		double[] sumi = new double[ni];
+		double[] sumj = new double[nj];
+		double sum = 0.0;
+		for (int i = 0; i < ni; i++) {
+			for (int j = 0; j < nj; j++) {
+				counts[i][j] = intCounts[i * nj + j];
+				sumi[i] += counts[i][j];
+				sumj[j] += counts[i][j];
+				sum += counts[i][j];
+			}
+		}
+
+		// distribute the missing values, as CfsSubsetEval does
+		if (!getMissingSeparate() && sumi[ni - 1] < numInstances && sumj[nj - 1] < numInstances) {
+			double[] i_copy = sumi.clone();
+			double[] j_copy = sumj.clone();
+			double[][] counts_copy = new double[ni][];
+			for (int i = 0; i < ni; i++) {
+				counts_copy[i] = counts[i].clone();
+			}
+			double total_missing = sumi[ni - 1] + sumj[nj - 1] - counts[ni - 1][nj - 1];
+			if (sumi[ni - 1] > 0.0) {
+				for (int j = 0; j < nj - 1; j++) {
+					if (counts[ni - 1][j] > 0.0) {
+						for (int i = 0; i < ni - 1; i++) {
+							double temp = i_copy[i] / (sum - i_copy[ni - 1]) * counts[ni - 1][j];
+							counts[i][j] += temp;
+							sumi[i] += temp;
+						}
+						counts[ni - 1][j] = 0.0;
+					}
+				}
+			}
+			sumi[ni - 1] = 0.0;
+			if (sumj[nj - 1] > 0.0) {
+				for (int i = 0; i < ni - 1; i++) {
+					if (counts[i][nj - 1] > 0.0) {
+						for (int j = 0; j < nj - 1; j++) {
+							double temp = j_copy[j] / (sum - j_copy[nj - 1]) * counts[i][nj - 1];
+							counts[i][j] += temp;
+							sumj[j] += temp;
+						}
+						counts[i][nj - 1] = 0.0;
+					}
+				}
+			}
+			sumj[nj - 1] = 0.0;
+			if (counts[ni - 1][nj - 1] > 0.0 && total_missing != sum) {
+				for (int i = 0; i < ni - 1; i++) {
+					for (int j = 0; j < nj - 1; j++) {
+						double temp = counts_copy[i][j] / (sum - total_missing) * counts_copy[ni - 1][nj - 1];
+						counts[i][j] += temp;
+						sumi[i] += temp;
+						sumj[j] += temp;
+					}
+				}
+				counts[ni - 1][nj - 1] = 0.0;
+			}
+		}
+
+		double corr_measure = ContingencyTables.symmetricalUncertainty(counts);
+		if (Utils.eq(corr_measure, 0.0)) {
+			return flag ? 0.0 : 1.0;
+		}
+		return corr_measure;
+	}
+
+	@Override
+	public int[] postProcess(int[] attributeSet) throws Exception {
+		if (delegate) {
+			return super.postProcess(attributeSet);
+		}
+		if (!getLocallyPredictive()) {
+			return attributeSet;
+		}
+		BitSet bestGroup = new BitSet(numAttribs);
+		for (int element : attributeSet) {
+			bestGroup.set(element);
+		}
+		addLocallyPredictive(bestGroup);
+		int[] newSet = new int[bestGroup.cardinality()];
+		int j = 0;
+		for (int i = bestGroup.nextSetBit(0); i >= 0; i = bestGroup.nextSetBit(i + 1)) {
+			newSet[j++] = i;
+		}
+		return newSet;
+	}
+
+	/**
+	 * CfsSubsetEval.addLocallyPredictive(): adds the attributes, in decreasing
+	 * order of correlation with the class, that are more correlated with the
+	 * class than with any attribute of the group.
+	 */
+	private void addLocallyPredictive(BitSet bestGroup) {
+		BitSet tempGroup = (BitSet) bestGroup.clone();
+		while (true) {
+			double tempBest = -1.0;
+			int j = 0;
+			for (int i = 0; i < numAttribs; i++) {
+				if (tempGroup.get(i) || i == classIndex) {
+					continue;
+				}
+				if (correlation(i, classIndex) > tempBest) {
+					tempBest = correlation(i, classIndex);
+					j = i;
+				}
+			}
+			if (tempBest == -1.0) {
+				return;
+			}
+			tempGroup.set(j);
+			boolean ok = true;
+			for (int i = bestGroup.nextSetBit(0); i >= 0; i = bestGroup.nextSetBit(i + 1)) {
+				if (correlation(i, j) > tempBest) {
+					ok = false;
+					break;
+				}
+			}
+			if (ok) {
+				bestGroup.set(j);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (delegate) {
+			return super.toString();
+		}
+		StringBuilder text = new StringBuilder();
+		if (columns == null) {
+			text.append("CFS subset evaluator has not been built yet\n");
+		} else {
+			text.append("\tCFS Subset Evaluator\n");
+			if (getMissingSeparate()) {
+				text.append("\tTreating missing values as a separate value\n");
+			}
+			if (getLocallyPredictive()) {
+				text.append("\tIncluding locally predictive attributes\n");
+			}
+		}
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,935 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.functions.SMO;
+import weka.classifiers.functions.supportVector.CachedKernel;
+import weka.classifiers.functions.supportVector.Kernel;
+import weka.classifiers.functions.supportVector.PolyKernel;
+import weka.classifiers.functions.supportVector.SMOset;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.NominalToBinary;
+import weka.filters.unsupervised.attribute.Normalize;
+import weka.filters.unsupervised.attribute.ReplaceMissingValues;
+import weka.filters.unsupervised.attribute.Standardize;
+
+/**
+ * SMO with a dedicated training path for linear kernels (PolyKernel with
+ * exponent 1 and no lower order term), and a kernel cache sized on the
+ * training set for the other kernels.
+ *
+ * The linear path runs the same optimization as SMO.BinarySMO (same working
+ * set selection, same updates, same floating point operations in the same
+ * order), but on primitive arrays: the training set is copied into a dense
+ * row-major array, the weight vector is updated in place, and the kernel
+ * values are dot products computed on first use and kept in the lower
+ * triangle of the numRows x numRows matrix if it fits in the cache budget,
+ * otherwise in a hashed cache as large as the budget allows (the one of
+ * CachedKernel: buckets of CACHE_SLOTS entries, the most recently used
+ * first). The trained model is a plain SMO.BinarySMO
+ * (sparse weights and bias), used by SMO for prediction: the models, and
+ * therefore the predictions, are exactly the same as the ones of SMO.
+ *
+ * The linear path can also read the kernel values from a GramMatrix shared
+ * by the folds of a group (setGramMatrix()), correcting the columns where the
+ * preprocessed training rows differ from the rows of the matrix. The values
+ * are the same up to rounding, but the models may then differ slightly from
+ * the ones of SMO.
+ *
+ * With any other kernel, or when calibration models are fitted (-M), the
+ * model is trained by SMO, with a full kernel cache if the kernel matrix of
+ * the training set fits in the budget, or a hashed cache as large as the
+ * budget allows.
+ */
+public class FastSMO extends SMO {
+
+	private static final long serialVersionUID = 1L;
+
+	// the entries of a bucket of the hashed cache, as in CachedKernel
+	private static final int CACHE_SLOTS = 4;
+	// a bucket of the hashed cache: CACHE_SLOTS entries of a long key and a double
+	private static final int BYTES_PER_CACHE_ENTRY = CACHE_SLOTS * (8 + 8);
+
+	private long cacheBudget = 256L << 20;
+	private transient GramMatrix gramMatrix;
+	private transient int[] gramPositions;
+
+
+	/**
+	 * The memory (in bytes) each binary machine may use to store kernel values.
+	 */
+	public void setCacheBudget(long cacheBudget) {
+		this.cacheBudget = cacheBudget;
+	}
+
+	public long getCacheBudget() {
+		return cacheBudget;
+	}
+
+	/**
+	 * Reads the kernel values of the linear path from the Gram matrix of the
+	 * group the training set is taken from (see gramMatrix()).
+	 *
+	 * @param positions the row of the group of each row of the training set
+	 */
+	public void setGramMatrix(GramMatrix gramMatrix, int[] positions) {
+		this.gramMatrix = gramMatrix;
+		this.gramPositions = positions;
+	}
+
+	/**
+	 * The Gram matrix of a group for the SVMs of its folds (with the options
+	 * of this one), or null if they are not trained by the linear path.
+	 *
+	 * @param budget the memory (in bytes) the matrix may use
+	 */
+	public GramMatrix gramMatrix(Instances group, long budget, boolean useFloat) throws Exception {
+		if (!isLinear() || m_fitCalibratorModels) {
+			return null;
+		}
+		int[] rowOf = new int[group.numInstances()];
+		Instances kept = trainingRows(group, rowOf);
+		if (kept.numInstances() == 0) {
+			return null;
+		}
+		// the filters of a copy, fitted on the whole group
+		FastSMO copy = (FastSMO) AbstractClassifier.makeCopy(this);
+		Instances insts = copy.preprocess(kept);
+		int numRows = insts.numInstances();
+		int numValues = insts.numAttributes() - 1;
+		double[] values = new double[numRows * numValues];
+		for (int r = 0, pos = 0; r < numRows; r++) {
+			Instance inst = insts.instance(r);
+			for (int i = 0; i < insts.numAttributes(); i++) {
+				if (i != insts.classIndex()) {
+					values[pos++] = inst.value(i);
+				}
+			}
+		}
+		return new GramMatrix(values, numRows, numValues, rowOf, budget, useFloat);
+	}
+
+	/**
+	 * An empty Gram matrix of the rows of a training set, to which the
+	 * columns of its attributes are added by addColumns() (see
+	 * GramMatrix.incremental()), or null if the SVMs are not trained by the
+	 * linear path or the matrix does not fit in the budget.
+	 */
+	public GramMatrix incrementalGramMatrix(Instances train, long budget) throws Exception {
+		if (!isLinear() || m_fitCalibratorModels) {
+			return null;
+		}
+		int[] rowOf = new int[train.numInstances()];
+		Instances kept = trainingRows(train, rowOf);
+		if (kept.numInstances() == 0) {
+			return null;
+		}
+		return GramMatrix.incremental(kept.numInstances(), rowOf, budget);
+	}
+
+	/**
+	 * Adds to a matrix of incrementalGramMatrix() the columns of the
+	 * attributes of the same training set (e.g. with a single attribute and
+	 * the class), preprocessed as the linear path preprocesses them: since the
+	 * filters work attribute by attribute, the columns are the ones the SVM
+	 * of a training set with more attributes gets.
+	 */
+	public void addColumns(GramMatrix gram, Instances train) throws Exception {
+		Instances kept = trainingRows(train, new int[train.numInstances()]);
+		FastSMO copy = (FastSMO) AbstractClassifier.makeCopy(this);
+		Instances insts = copy.preprocess(kept);
+		for (int i = 0; i < insts.numAttributes(); i++) {
+			if (i == insts.classIndex()) {
+				continue;
+			}
+			double[] column = new double[insts.numInstances()];
+			for (int r = 0; r < column.length; r++) {
+				column[r] = insts.instance(r).value(i);
+			}
+			gram.addColumn(column);
+		}
+	}
+
+	/**
+	 * The rows kept by preprocess() (with class and weight), and the index of
+	 * each row among them (-1 if not kept).
+	 */
+	private Instances trainingRows(Instances insts, int[] rowOf) {
+		Instances kept = new Instances(insts, insts.numInstances());
+		for (int i = 0; i < insts.numInstances(); i++) {
+			Instance inst = insts.instance(i);
+			if (m_checksTurnedOff || (!inst.classIsMissing() && inst.weight() > 0)) {
+				rowOf[i] = kept.numInstances();
+				kept.add(inst);
+			} else {
+				rowOf[i] = -1;
+			}
+		}
+		return kept;
+	}
+
+	private boolean isLinear() {
+		Kernel kernel = getKernel();
+		return kernel instanceof PolyKernel
+				&& ((PolyKernel) kernel).getExponent() == 1.0
+				&& !((PolyKernel) kernel).getUseLowerOrder();
+	}
+
+	@Override
+	public void buildClassifier(Instances insts) throws Exception {
+		if (!isLinear() || m_fitCalibratorModels) {
+			if (getKernel() instanceof CachedKernel) {
+				((CachedKernel) getKernel()).setCacheSize(cacheSizeFor(insts.numInstances(), cacheBudget));
+			}
+			super.buildClassifier(insts);
+			return;
+		}
+
+		// the rows of the Gram matrix of the rows kept by preprocess()
+		int[] gramRows = null;
+		if (gramMatrix != null && gramPositions.length == insts.numInstances()) {
+			gramRows = new int[insts.numInstances()];
+			int n = 0;
+			for (int i = 0; i < insts.numInstances(); i++) {
+				Instance inst = insts.instance(i);
+				if (m_checksTurnedOff || (!inst.classIsMissing() && inst.weight() > 0)) {
+					gramRows[n++] = gramMatrix.row(gramPositions[i]);
+				}
+			}
+			gramRows = Arrays.copyOf(gramRows, n);
+		}
+
+		// from here on, the same steps as SMO.buildClassifier(), with
+		// LinearBinarySMO in place of BinarySMO
+		insts = preprocess(insts);
+		m_classIndex = insts.classIndex();
+		m_classAttribute = insts.classAttribute();
+		m_KernelIsLinear = true;
+
+		Instances[] subsets = new Instances[insts.numClasses()];
+		int[][] subsetRows = new int[insts.numClasses()][];
+		for (int i = 0; i < insts.numClasses(); i++) {
+			subsets[i] = new Instances(insts, insts.numInstances());
+			subsetRows[i] = new int[insts.numInstances()];
+		}
+		for (int j = 0; j < insts.numInstances(); j++) {
+			Instance inst = insts.instance(j);
+			int cls = (int) inst.classValue();
+			if (gramRows != null) {
+				subsetRows[cls][subsets[cls].numInstances()] = gramRows[j];
+			}
+			subsets[cls].add(inst);
+		}
+		for (int i = 0; i < insts.numClasses(); i++) {
+			subsets[i].compactify();
+		}
+
+		Random rand = new Random(m_randomSeed);
+		m_classifiers = new BinarySMO[insts.numClasses()][insts.numClasses()];
+		for (int i = 0; i < insts.numClasses(); i++) {
+			for (int j = i + 1; j < insts.numClasses(); j++) {
+				LinearBinarySMO smo = new LinearBinarySMO();
+				m_classifiers[i][j] = smo;
+				Instances data = new Instances(insts, insts.numInstances());
+				int[] dataRows = new int[subsets[i].numInstances() + subsets[j].numInstances()];
+				for (int k = 0; k < subsets[i].numInstances(); k++) {
+					dataRows[data.numInstances()] = subsetRows[i][k];
+					data.add(subsets[i].instance(k));
+				}
+				for (int k = 0; k < subsets[j].numInstances(); k++) {
+					dataRows[data.numInstances()] = subsetRows[j][k];
+					data.add(subsets[j].instance(k));
+				}
+				data.compactify();
+				// Instances.randomize(), with the rows of the Gram matrix in step
+				for (int k = data.numInstances() - 1; k > 0; k--) {
+					int other = rand.nextInt(k + 1);
+					data.swap(k, other);
+					int row = dataRows[k];
+					dataRows[k] = dataRows[other];
+					dataRows[other] = row;
+				}
+				smo.gramRows = gramRows != null ? dataRows : null;
+				smo.buildClassifier(data, i, j, m_fitCalibratorModels, m_numFolds, m_randomSeed);
+			}
+		}
+	}
+
+	/**
+	 * The steps of SMO.buildClassifier() before the binary machines are
+	 * trained: removes the rows without class or weight, replaces the missing
+	 * values, binarizes the nominal attributes and normalizes (or
+	 * standardizes) the attributes, fitting the filters on the given rows.
+	 */
+	private Instances preprocess(Instances insts) throws Exception {
+		if (!m_checksTurnedOff) {
+			getCapabilities().testWithFail(insts);
+			insts = new Instances(insts);
+			insts.deleteWithMissingClass();
+			Instances data = new Instances(insts, insts.numInstances());
+			for (int i = 0; i < insts.numInstances(); i++) {
+				if (insts.instance(i).weight() > 0) {
+					data.add(insts.instance(i));
+				}
+			}
+			if (data.numInstances() == 0) {
+				throw new Exception("No training instances left after removing instances with weight 0!");
+			}
+			insts = data;
+		}
+		if (!m_checksTurnedOff) {
+			m_Missing = new ReplaceMissingValues();
+			m_Missing.setInputFormat(insts);
+			insts = Filter.useFilter(insts, m_Missing);
+		} else {
+			m_Missing = null;
+		}
+		boolean onlyNumeric = true;
+		if (!m_checksTurnedOff) {
+			for (int i = 0; i < insts.numAttributes(); i++) {
+				if (i != insts.classIndex() && !insts.attribute(i).isNumeric()) {
+					onlyNumeric = false;
+					break;
+				}
+			}
+		}
+		if (!onlyNumeric) {
+			m_NominalToBinary = new NominalToBinary();
+			m_NominalToBinary.setInputFormat(insts);
+			insts = Filter.useFilter(insts, m_NominalToBinary);
+		} else {
+			m_NominalToBinary = null;
+		}
+		if (m_filterType == FILTER_STANDARDIZE) {
+			m_Filter = new Standardize();
+			m_Filter.setInputFormat(insts);
+			insts = Filter.useFilter(insts, m_Filter);
+		} else if (m_filterType == FILTER_NORMALIZE) {
+			m_Filter = new Normalize();
+			m_Filter.setInputFormat(insts);
+			insts = Filter.useFilter(insts, m_Filter);
+		} else {
+			m_Filter = null;
+		}
+		return insts;
+	}
+
+	/**
+	 * The size of the cache of CachedKernel for a training set of n rows: 0
+	 * (full cache) if the lower triangle of the kernel matrix fits in the
+	 * budget, otherwise the largest prime number of entries that fits in it.
+	 */
+	static int cacheSizeFor(int n, long budget) {
+		if (8L * n * (n + 1) / 2 <= budget) {
+			return 0;
+		}
+		long entries = Math.min(Integer.MAX_VALUE, Math.max(3, budget / BYTES_PER_CACHE_ENTRY));
+		for (int p = (int) entries; p > 3; p--) {
+			if (isPrime(p)) {
+				return p;
+			}
+		}
+		return 3;
+	}
+
+	private static boolean isPrime(int p) {
+		if (p % 2 == 0) {
+			return false;
+		}
+		for (int d = 3; (long) d * d <= p; d += 2) {
+			if (p % d == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * SMO.BinarySMO (Platt's SMO with Keerthi et al.'s modification 2) for a
+	 * linear kernel, on primitive arrays.
+	 */
+	protected class LinearBinarySMO extends BinarySMO {
+
+		private static final long serialVersionUID = 1L;
+
+		private int numRows;
+		private int numValues;
+		private double[] values;    // numRows x numValues, without the class
+		private int[] nonZeros;     // the columns of the non-zero values of each row, in order
+		private int[] rowStart;     // the first entry of nonZeros of each row, and their number last
+		private double[] w;         // the weights of the attributes but the class
+		private double[] bound;     // C * weight of each row
+		private double[] gram;      // lower triangle of the kernel values, row by row, NaN if not computed yet
+		private long[] cacheKeys;   // if the triangle does not fit: the hashed cache, key + 1 (0 if empty)
+		private double[] cacheValues;
+		private int cacheSize;      // the number of buckets
+		private long numDots;
+		private transient int[] gramRows;    // the row of the shared Gram matrix of each row
+		private transient int[] corrected;   // the columns that differ from the ones of the Gram matrix
+
+
+		@Override
+		protected void buildClassifier(Instances insts, int cl1, int cl2, boolean fitCalibrator, int numFolds, int randomSeed) throws Exception {
+			m_bUp = -1;
+			m_bLow = 1;
+			m_b = 0;
+			m_alpha = null;
+			m_data = null;
+			m_weights = null;
+			m_errors = null;
+			m_calibrator = null;
+			m_I0 = null;
+			m_I1 = null;
+			m_I2 = null;
+			m_I3 = null;
+			m_I4 = null;
+			m_sparseWeights = null;
+			m_sparseIndices = null;
+
+			m_sumOfWeights = insts.sumOfWeights();
+			m_class = new double[insts.numInstances()];
+			m_iUp = -1;
+			m_iLow = -1;
+			for (int i = 0; i < m_class.length; i++) {
+				if ((int) insts.instance(i).classValue() == cl1) {
+					m_class[i] = -1;
+					m_iLow = i;
+				} else if ((int) insts.instance(i).classValue() == cl2) {
+					m_class[i] = 1;
+					m_iUp = i;
+				} else {
+					throw new Exception("This should never happen!");
+				}
+			}
+
+			// a single class
+			if (m_iUp == -1 || m_iLow == -1) {
+				if (m_iUp != -1) {
+					m_b = -1;
+				} else if (m_iLow != -1) {
+					m_b = 1;
+				} else {
+					m_class = null;
+					return;
+				}
+				m_sparseWeights = new double[0];
+				m_sparseIndices = new int[0];
+				m_class = null;
+				if (fitCalibrator) {
+					fitCalibrator(insts, cl1, cl2, numFolds, new Random(randomSeed));
+				}
+				return;
+			}
+
+			m_data = insts;
+			numRows = insts.numInstances();
+			int numAttributes = insts.numAttributes();
+			int classIndex = insts.classIndex();
+			numValues = numAttributes - 1;
+			values = new double[numRows * numValues];
+			bound = new double[numRows];
+			for (int r = 0; r < numRows; r++) {
+				Instance inst = insts.instance(r);
+				int pos = r * numValues;
+				for (int i = 0; i < numAttributes; i++) {
+					if (i != classIndex) {
+						values[pos++] = inst.value(i);
+					}
+				}
+				bound[r] = m_C * inst.weight();
+			}
+			rowStart = new int[numRows + 1];
+			for (int r = 0; r < numRows; r++) {
+				int pos = r * numValues;
+				rowStart[r + 1] = rowStart[r];
+				for (int k = 0; k < numValues; k++) {
+					if (values[pos + k] != 0) {
+						rowStart[r + 1]++;
+					}
+				}
+			}
+			nonZeros = new int[rowStart[numRows]];
+			for (int r = 0, n = 0; r < numRows; r++) {
+				int pos = r * numValues;
+				for (int k = 0; k < numValues; k++) {
+					if (values[pos + k] != 0) {
+						nonZeros[n++] = k;
+					}
+				}
+			}
+			w = new double[numValues];
+			m_alpha = new double[numRows];
+			m_supportVectors = new SMOset(numRows);
+			m_I0 = new SMOset(numRows);
+			m_I1 = new SMOset(numRows);
+			m_I2 = new SMOset(numRows);
+			m_I3 = new SMOset(numRows);
+			m_I4 = new SMOset(numRows);
+			long gramSize = (long) numRows * (numRows + 1) / 2;
+			if (8 * gramSize <= cacheBudget && gramSize <= Integer.MAX_VALUE - 8) {
+				gram = new double[(int) gramSize];
+				Arrays.fill(gram, Double.NaN);
+				cacheKeys = null;
+				cacheValues = null;
+			} else {
+				gram = null;
+				// less than the triangle, in arrays of at most Integer.MAX_VALUE entries
+				long budget = Math.min(Math.min(cacheBudget, 8 * gramSize - 8), (long) (Integer.MAX_VALUE / CACHE_SLOTS - 8) * BYTES_PER_CACHE_ENTRY);
+				cacheSize = cacheSizeFor(numRows, budget);
+				cacheKeys = new long[cacheSize * CACHE_SLOTS];
+				cacheValues = new double[cacheSize * CACHE_SLOTS];
+			}
+			numDots = 0;
+			shareGramMatrix();
+
+			m_errors = new double[numRows];
+			m_errors[m_iLow] = 1;
+			m_errors[m_iUp] = -1;
+			for (int i = 0; i < numRows; i++) {
+				if (m_class[i] == 1) {
+					m_I1.insert(i);
+				} else {
+					m_I4.insert(i);
+				}
+			}
+
+			// the main loop of BinarySMO.buildClassifier()
+			int numChanged = 0;
+			boolean examineAll = true;
+			while (numChanged > 0 || examineAll) {
+				numChanged = 0;
+				if (examineAll) {
+					for (int i = 0; i < numRows; i++) {
+						if (examine(i)) {
+							numChanged++;
+						}
+					}
+				} else {
+					for (int i = 0; i < numRows; i++) {
+						if (m_alpha[i] > 0 && m_alpha[i] < bound[i]) {
+							if (examine(i)) {
+								numChanged++;
+							}
+							if (m_bUp > m_bLow - 2 * m_tol) {
+								numChanged = 0;
+								break;
+							}
+						}
+					}
+				}
+				if (examineAll) {
+					examineAll = false;
+				} else if (numChanged == 0) {
+					examineAll = true;
+				}
+			}
+			m_b = (m_bLow + m_bUp) / 2.0;
+			m_nEvals = numDots;
+			m_nCacheHits = -1;
+
+			// keep the weights, as BinarySMO does for linear machines
+			m_weights = new double[numAttributes];
+			for (int i = 0, k = 0; i < numAttributes; i++) {
+				if (i != classIndex) {
+					m_weights[i] = w[k++];
+				}
+			}
+			values = null;
+			nonZeros = null;
+			rowStart = null;
+			gram = null;
+			cacheKeys = null;
+			cacheValues = null;
+			gramRows = null;
+			corrected = null;
+			w = null;
+			bound = null;
+			m_kernel = null;
+			m_errors = null;
+			m_I4 = null;
+			m_I3 = null;
+			m_I2 = null;
+			m_I1 = null;
+			m_I0 = null;
+			m_supportVectors = null;
+			m_class = null;
+			m_data = !m_checksTurnedOff ? new Instances(m_data, 0) : null;
+			double[] sparseWeights = new double[m_weights.length];
+			int[] sparseIndices = new int[m_weights.length];
+			int counter = 0;
+			for (int i = 0; i < m_weights.length; i++) {
+				if (m_weights[i] != 0.0) {
+					sparseWeights[counter] = m_weights[i];
+					sparseIndices[counter] = i;
+					counter++;
+				}
+			}
+			m_sparseWeights = new double[counter];
+			m_sparseIndices = new int[counter];
+			System.arraycopy(sparseWeights, 0, m_sparseWeights, 0, counter);
+			System.arraycopy(sparseIndices, 0, m_sparseIndices, 0, counter);
+			m_weights = null;
+			m_alpha = null;
+
+			if (fitCalibrator) {
+				fitCalibrator(insts, cl1, cl2, numFolds, new Random(randomSeed));
+			}
+		}
+
+		/**
+		 * Reads the kernel values from the shared Gram matrix, if any, when
+		 * the rows of the training set differ from its rows on at most half
+		 * of the columns; otherwise they are computed as dot products.
+		 */
+		private void shareGramMatrix() {
+			corrected = null;
+			if (gramRows == null || gramMatrix.numValues() != numValues) {
+				gramRows = null;
+				return;
+			}
+			for (int r : gramRows) {
+				if (r < 0) {
+					gramRows = null;
+					return;
+				}
+			}
+			int[] columns = new int[numValues];
+			int n = 0;
+			for (int k = 0; k < numValues; k++) {
+				for (int r = 0; r < numRows; r++) {
+					if (values[r * numValues + k] != gramMatrix.value(gramRows[r], k)) {
+						columns[n++] = k;
+						break;
+					}
+				}
+			}
+			if (n > numValues / 2) {
+				gramRows = null;
+				return;
+			}
+			corrected = Arrays.copyOf(columns, n);
+		}
+
+		/**
+		 * SVMOutput() of a training row, while training. The sums of this
+		 * class skip the zero values: adding a zero product to a sum that
+		 * starts at +0 does not change it, so they are the same as the sums
+		 * over all the values.
+		 */
+		private double output(int r) {
+			int pos = r * numValues;
+			double result = 0;
+			for (int n = rowStart[r]; n < rowStart[r + 1]; n++) {
+				int k = nonZeros[n];
+				result += w[k] * values[pos + k];
+			}
+			result -= m_b;
+			return result;
+		}
+
+		/**
+		 * The kernel value of two training rows, as CachedKernel.dotProd().
+		 */
+		private double kernel(int r1, int r2) {
+			if (gram == null) {
+				return cachedKernel(r1, r2);
+			}
+			int pos = r1 >= r2 ? (int) ((long) r1 * (r1 + 1) / 2 + r2) : (int) ((long) r2 * (r2 + 1) / 2 + r1);
+			double k = gram[pos];
+			if (Double.isNaN(k)) {
+				k = dot(r1, r2);
+				gram[pos] = k;
+			}
+			return k;
+		}
+
+		/**
+		 * The kernel value of two training rows from the hashed cache, as
+		 * CachedKernel.eval() with a cache size other than 0: the entry found
+		 * is moved to the front of its bucket, and a new entry is put at the
+		 * front, dropping the last one.
+		 */
+		private double cachedKernel(int r1, int r2) {
+			long key = r1 > r2 ? r1 + (long) r2 * numRows : r2 + (long) r1 * numRows;
+			int location = (int) (key % cacheSize) * CACHE_SLOTS;
+			for (int i = 0, loc = location; i < CACHE_SLOTS && cacheKeys[loc] != 0; i++, loc++) {
+				if (cacheKeys[loc] == key + 1) {
+					double k = cacheValues[loc];
+					if (i > 0) {
+						cacheValues[loc] = cacheValues[location];
+						cacheKeys[loc] = cacheKeys[location];
+						cacheValues[location] = k;
+						cacheKeys[location] = key + 1;
+					}
+					return k;
+				}
+			}
+			double k = dot(r1, r2);
+			System.arraycopy(cacheKeys, location, cacheKeys, location + 1, CACHE_SLOTS - 1);
+			System.arraycopy(cacheValues, location, cacheValues, location + 1, CACHE_SLOTS - 1);
+			cacheKeys[location] = key + 1;
+			cacheValues[location] = k;
+			return k;
+		}
+
+		private double dot(int r1, int r2) {
+			numDots++;
+			if (gramRows != null) {
+				return sharedDot(r1, r2);
+			}
+			// the non-zero values of the row with fewer of them
+			if (rowStart[r1 + 1] - rowStart[r1] > rowStart[r2 + 1] - rowStart[r2]) {
+				int r = r1;
+				r1 = r2;
+				r2 = r;
+			}
+			int p1 = r1 * numValues;
+			int p2 = r2 * numValues;
+			double result = 0;
+			for (int n = rowStart[r1]; n < rowStart[r1 + 1]; n++) {
+				int k = nonZeros[n];
+				result += values[p1 + k] * values[p2 + k];
+			}
+			return result;
+		}
+
+		/**
+		 * The dot product of two rows from the Gram matrix, with the terms of
+		 * the columns that differ replaced by the ones of the training rows.
+		 */
+		private double sharedDot(int r1, int r2) {
+			int g1 = gramRows[r1];
+			int g2 = gramRows[r2];
+			int p1 = r1 * numValues;
+			int p2 = r2 * numValues;
+			double result = gramMatrix.kernel(g1, g2);
+			for (int k : corrected) {
+				result += values[p1 + k] * values[p2 + k] - gramMatrix.value(g1, k) * gramMatrix.value(g2, k);
+			}
+			return result;
+		}
+
+		/**
+		 * BinarySMO.examineExample().
+		 */
+		private boolean examine(int i2) throws Exception {
+			double y2 = m_class[i2];
+			double F2;
+			int i1 = -1;
+			if (m_I0.contains(i2)) {
+				F2 = m_errors[i2];
+			} else {
+				F2 = output(i2) + m_b - y2;
+				m_errors[i2] = F2;
+				if ((m_I1.contains(i2) || m_I2.contains(i2)) && F2 < m_bUp) {
+					m_bUp = F2;
+					m_iUp = i2;
+				} else if ((m_I3.contains(i2) || m_I4.contains(i2)) && F2 > m_bLow) {
+					m_bLow = F2;
+					m_iLow = i2;
+				}
+			}
+
+			boolean optimal = true;
+			if ((m_I0.contains(i2) || m_I1.contains(i2) || m_I2.contains(i2)) && m_bLow - F2 > 2 * m_tol) {
+				optimal = false;
+				i1 = m_iLow;
+			}
+			if ((m_I0.contains(i2) || m_I3.contains(i2) || m_I4.contains(i2)) && F2 - m_bUp > 2 * m_tol) {
+				optimal = false;
+				i1 = m_iUp;
+			}
+			if (optimal) {
+				return false;
+			}
+			if (m_I0.contains(i2)) {
+				if (m_bLow - F2 > F2 - m_bUp) {
+					i1 = m_iLow;
+				} else {
+					i1 = m_iUp;
+				}
+			}
+			if (i1 == -1) {
+				throw new Exception("This should never happen!");
+			}
+			return step(i1, i2, F2);
+		}
+
+		/**
+		 * BinarySMO.takeStep().
+		 */
+		private boolean step(int i1, int i2, double F2) throws Exception {
+			double C1 = bound[i1];
+			double C2 = bound[i2];
+			if (i1 == i2) {
+				return false;
+			}
+			double alph1 = m_alpha[i1];
+			double alph2 = m_alpha[i2];
+			double y1 = m_class[i1];
+			double y2 = m_class[i2];
+			double F1 = m_errors[i1];
+			double s = y1 * y2;
+			double L, H;
+			if (y1 != y2) {
+				L = Math.max(0, alph2 - alph1);
+				H = Math.min(C2, C1 + alph2 - alph1);
+			} else {
+				L = Math.max(0, alph1 + alph2 - C1);
+				H = Math.min(C2, alph1 + alph2);
+			}
+			if (L >= H) {
+				return false;
+			}
+
+			double k11 = kernel(i1, i1);
+			double k12 = kernel(i1, i2);
+			double k22 = kernel(i2, i2);
+			double eta = 2 * k12 - k11 - k22;
+			double a2;
+			if (eta < 0) {
+				a2 = alph2 - y2 * (F1 - F2) / eta;
+				if (a2 < L) {
+					a2 = L;
+				} else if (a2 > H) {
+					a2 = H;
+				}
+			} else {
+				double f1 = output(i1);
+				double f2 = output(i2);
+				double v1 = f1 + m_b - y1 * alph1 * k11 - y2 * alph2 * k12;
+				double v2 = f2 + m_b - y1 * alph1 * k12 - y2 * alph2 * k22;
+				double gamma = alph1 + s * alph2;
+				double Lobj = (gamma - s * L) + L - 0.5 * k11 * (gamma - s * L) * (gamma - s * L)
+						- 0.5 * k22 * L * L - s * k12 * (gamma - s * L) * L - y1 * (gamma - s * L) * v1 - y2 * L * v2;
+				double Hobj = (gamma - s * H) + H - 0.5 * k11 * (gamma - s * H) * (gamma - s * H)
+						- 0.5 * k22 * H * H - s * k12 * (gamma - s * H) * H - y1 * (gamma - s * H) * v1 - y2 * H * v2;
+				if (Lobj > Hobj + m_eps) {
+					a2 = L;
+				} else if (Lobj < Hobj - m_eps) {
+					a2 = H;
+				} else {
+					a2 = alph2;
+				}
+			}
+			if (Math.abs(a2 - alph2) < m_eps * (a2 + alph2 + m_eps)) {
+				return false;
+			}
+
+			// to prevent precision problems
+			if (a2 > C2 - m_Del * C2) {
+				a2 = C2;
+			} else if (a2 <= m_Del * C2) {
+				a2 = 0;
+			}
+			double a1 = alph1 + s * (alph2 - a2);
+			if (a1 > C1 - m_Del * C1) {
+				a1 = C1;
+			} else if (a1 <= m_Del * C1) {
+				a1 = 0;
+			}
+
+			updateSets(i1, y1, a1, C1);
+			updateSets(i2, y2, a2, C2);
+
+			// the weights of the linear machine
+			double d1 = y1 * (a1 - alph1);
+			double d2 = y2 * (a2 - alph2);
+			int p1 = i1 * numValues;
+			for (int n = rowStart[i1]; n < rowStart[i1 + 1]; n++) {
+				int k = nonZeros[n];
+				w[k] += d1 * values[p1 + k];
+			}
+			int p2 = i2 * numValues;
+			for (int n = rowStart[i2]; n < rowStart[i2 + 1]; n++) {
+				int k = nonZeros[n];
+				w[k] += d2 * values[p2 + k];
+			}
+
+			// the error cache, and then bLow and bUp: the errors of i1 and i2
+			// do not depend on the other ones, so they are updated first and
+			// the errors of I0 are scanned (in the same order) while updated
+			m_errors[i1] += d1 * k11 + d2 * k12;
+			m_errors[i2] += d1 * k12 + d2 * k22;
+			m_alpha[i1] = a1;
+			m_alpha[i2] = a2;
+			m_bLow = -Double.MAX_VALUE;
+			m_bUp = Double.MAX_VALUE;
+			m_iLow = -1;
+			m_iUp = -1;
+			for (int j = m_I0.getNext(-1); j != -1; j = m_I0.getNext(j)) {
+				if (j != i1 && j != i2) {
+					m_errors[j] += d1 * kernel(i1, j) + d2 * kernel(i2, j);
+				}
+				if (m_errors[j] < m_bUp) {
+					m_bUp = m_errors[j];
+					m_iUp = j;
+				}
+				if (m_errors[j] > m_bLow) {
+					m_bLow = m_errors[j];
+					m_iLow = j;
+				}
+			}
+			updateBounds(i1);
+			updateBounds(i2);
+			if (m_iLow == -1 || m_iUp == -1) {
+				throw new Exception("This should never happen!");
+			}
+			return true;
+		}
+
+		private void updateSets(int i, double y, double a, double C) {
+			if (a > 0) {
+				m_supportVectors.insert(i);
+			} else {
+				m_supportVectors.delete(i);
+			}
+			if (a > 0 && a < C) {
+				m_I0.insert(i);
+			} else {
+				m_I0.delete(i);
+			}
+			if (y == 1 && a == 0) {
+				m_I1.insert(i);
+			} else {
+				m_I1.delete(i);
+			}
+			if (y == -1 && a == C) {
+				m_I2.insert(i);
+			} else {
+				m_I2.delete(i);
+			}
+			if (y == 1 && a == C) {
+				m_I3.insert(i);
+			} else {
+				m_I3.delete(i);
+			}
+			if (y == -1 && a == 0) {
+				m_I4.insert(i);
+			} else {
+				m_I4.delete(i);
+			}
+		}
+
+		private void updateBounds(int i) {
+			if (m_I0.contains(i)) {
+				return;
+			}
+			if (m_I3.contains(i) || m_I4.contains(i)) {
+				if (m_errors[i] > m_bLow) {
+					m_bLow = m_errors[i];
+					m_iLow = i;
+				}
+			} else if (m_errors[i] < m_bUp) {
+				m_bUp = m_errors[i];
+				m_iUp = i;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package it.unibo.disi.asnanalysis;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Dense, row-major copy of the values of a dataset in a single double[],
+ * built once after loading and shared (read-only) by all the analyses.
+ *
+ * The subsets analysed (the rows of an RF or Area, the training and test sets
+ * of the folds) and the attributes they keep are index arrays over the matrix
+ * (see FeatureView), instead of copies of the dataset made by the filters.
+ * Weka Instances are only built when a classifier or a filter consumes them.
+ */
+public class FeatureMatrix {
+
+	private final Instances header;
+	private final int numAttributes;
+	private final int numRows;
+	private final double[] values;
+	private final double[] weights;
+
+
+	public FeatureMatrix(Instances dataSet) {
+		this.header = new Instances(dataSet, 0);
+		this.numAttributes = dataSet.numAttributes();
+		this.numRows = dataSet.numInstances();
+		this.values = new double[numRows * numAttributes];
+		this.weights = new double[numRows];
+		for (int r = 0; r < numRows; r++) {
+			Instance inst = dataSet.instance(r);
+			weights[r] = inst.weight();
+			for (int i = 0; i < numAttributes; i++) {
+				values[r * numAttributes + i] = inst.value(i);
+			}
+		}
+	}
+
+	/**
+	 * A matrix with the given (row-major) values and weights.
+	 */
+	FeatureMatrix(Instances header, double[] values, double[] weights) {
+		this.header = header;
+		this.numAttributes = header.numAttributes();
+		this.numRows = weights.length;
+		this.values = values;
+		this.weights = weights;
+	}
+
+	/**
+	 * The attributes of the dataset (no rows).
+	 */
+	public Instances getHeader() {
+		return header;
+	}
+
+	public int numAttributes() {
+		return numAttributes;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public double value(int row, int attr) {
+		return values[row * numAttributes + attr];
+	}
+
+	public double weight(int row) {
+		return weights[row];
+	}
+
+	/**
+	 * The attribute with the given name, or -1.
+	 */
+	public int attributeIndex(String name) {
+		return header.attribute(name) == null ? -1 : header.attribute(name).index();
+	}
+
+	/**
+	 * All the rows and the attributes of the matrix.
+	 */
+	public FeatureView view(String className) {
+		int[] rows = new int[numRows];
+		for (int r = 0; r < numRows; r++) {
+			rows[r] = r;
+		}
+		int[] columns = new int[numAttributes];
+		for (int i = 0; i < numAttributes; i++) {
+			columns[i] = i;
+		}
+		return new FeatureView(this, rows, columns, attributeIndex(className));
+	}
+
+	/**
+	 * The given rows (in ascending order) and attributes, the class being one
+	 * of the attributes.
+	 */
+	public FeatureView view(int[] rows, int[] columns, String className) {
+		return new FeatureView(this, rows, columns, attributeIndex(className));
+	}
+
+	/**
+	 * The given rows, with all the attributes but the removed ones (0-based),
+	 * i.e. the attributes kept by the Remove filter.
+	 */
+	public FeatureView viewWithout(int[] rows, int[] removed, String className) {
+		boolean[] drop = new boolean[numAttributes];
+		for (int i : removed) {
+			drop[i] = true;
+		}
+		int[] columns = new int[numAttributes - removed.length];
+		int pos = 0;
+		for (int i = 0; i < numAttributes; i++) {
+			if (!drop[i]) {
+				columns[pos++] = i;
+			}
+		}
+		return view(rows, columns, className);
+	}
+
+}
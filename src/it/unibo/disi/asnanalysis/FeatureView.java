@@ -0,0 +1,290 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * A subset of the rows and of the attributes of a FeatureMatrix, with an
+ * int-coded class vector (-1 for missing class values).
+ *
+ * The rows of the view are addressed by their position (0..numRows()-1), and
+ * the folds of a cross-validation are arrays of positions computed as
+ * Instances.randomize(), stratify(), testCV() and trainCV() would, so that the
+ * datasets built by toInstances() are the same, in the same order, as the
+ * ones obtained by filtering and splitting an Instances copy of the view.
+ */
+public class FeatureView {
+
+	private final FeatureMatrix matrix;
+	private final int[] rows;
+	private final int[] columns;
+	private final int classColumn;
+	private final int[] classes;
+
+	private Instances header;
+	private Instance[] instances;
+
+
+	FeatureView(FeatureMatrix matrix, int[] rows, int[] columns, int classAttr) {
+		this.matrix = matrix;
+		this.rows = rows;
+		this.columns = columns;
+		int classColumn = -1;
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] == classAttr) {
+				classColumn = i;
+			}
+		}
+		if (classColumn < 0) {
+			throw new IllegalArgumentException("The class attribute is not part of the view");
+		}
+		this.classColumn = classColumn;
+		this.classes = new int[rows.length];
+		for (int p = 0; p < rows.length; p++) {
+			double v = matrix.value(rows[p], classAttr);
+			classes[p] = Double.isNaN(v) ? -1 : (int) v;
+		}
+	}
+
+	public FeatureMatrix getMatrix() {
+		return matrix;
+	}
+
+	public int numRows() {
+		return rows.length;
+	}
+
+	public int numAttributes() {
+		return columns.length;
+	}
+
+	/**
+	 * The (0-based) attribute of the matrix of the given column of the view.
+	 */
+	public int column(int i) {
+		return columns[i];
+	}
+
+	public int classIndex() {
+		return classColumn;
+	}
+
+	public int classCode(int pos) {
+		return classes[pos];
+	}
+
+	public double weight(int pos) {
+		return matrix.weight(rows[pos]);
+	}
+
+	public double value(int pos, int i) {
+		return matrix.value(rows[pos], columns[i]);
+	}
+
+	/**
+	 * The same rows with the given columns (positions in this view), in the
+	 * given order, i.e. the attributes kept by "Remove -V".
+	 */
+	public FeatureView select(int[] keep, String className) {
+		int[] selected = new int[keep.length];
+		for (int i = 0; i < keep.length; i++) {
+			selected[i] = columns[keep[i]];
+		}
+		return new FeatureView(matrix, rows, selected, matrix.attributeIndex(className));
+	}
+
+	/**
+	 * The given rows (positions in this view), in the given order, with the
+	 * same columns, e.g. the training rows of a fold.
+	 */
+	public FeatureView rows(int[] positions) {
+		int[] selected = new int[positions.length];
+		for (int p = 0; p < positions.length; p++) {
+			selected[p] = rows[positions[p]];
+		}
+		return new FeatureView(matrix, selected, columns, columns[classColumn]);
+	}
+
+	/**
+	 * The attributes of the view (no rows), with the class set.
+	 */
+	public synchronized Instances header() {
+		if (header == null) {
+			Instances source = matrix.getHeader();
+			ArrayList<Attribute> attributes = new ArrayList<Attribute>(columns.length);
+			for (int c : columns) {
+				attributes.add((Attribute) source.attribute(c).copy());
+			}
+			header = new Instances(source.relationName(), attributes, 0);
+			header.setClassIndex(classColumn);
+		}
+		return header;
+	}
+
+	/**
+	 * All the rows of the view.
+	 */
+	public Instances toInstances() {
+		int[] positions = new int[rows.length];
+		for (int p = 0; p < positions.length; p++) {
+			positions[p] = p;
+		}
+		return toInstances(positions);
+	}
+
+	/**
+	 * A new dataset with the given rows (positions in the view), in the given
+	 * order. The values of each row are allocated once per view: the datasets
+	 * share them, since Weka instances copy their values before changing them.
+	 */
+	public Instances toInstances(int[] positions) {
+		Instance[] all = instances();
+		Instances res = new Instances(header(), positions.length);
+		for (int p : positions) {
+			res.add(all[p]);
+		}
+		return res;
+	}
+
+	private synchronized Instance[] instances() {
+		if (instances == null) {
+			instances = new Instance[rows.length];
+			for (int p = 0; p < rows.length; p++) {
+				double[] values = new double[columns.length];
+				for (int i = 0; i < columns.length; i++) {
+					values[i] = matrix.value(rows[p], columns[i]);
+				}
+				instances[p] = new DenseInstance(matrix.weight(rows[p]), values);
+			}
+		}
+		return instances;
+	}
+
+	/**
+	 * The positions of the rows shuffled as Instances.randomize() does and,
+	 * if the class is nominal, stratified as Instances.stratify() does.
+	 */
+	public int[] foldOrder(Random rand, int folds) {
+		int[] order = new int[rows.length];
+		for (int p = 0; p < order.length; p++) {
+			order[p] = p;
+		}
+		for (int j = order.length - 1; j > 0; j--) {
+			swap(order, j, rand.nextInt(j + 1));
+		}
+		if (!header().classAttribute().isNominal()) {
+			return order;
+		}
+
+		// group the rows by class, keeping the first occurrence order
+		int index = 1;
+		while (index < order.length) {
+			int cls = classes[order[index - 1]];
+			for (int j = index; j < order.length; j++) {
+				if (classes[order[j]] == cls) {
+					swap(order, index, j);
+					index++;
+				}
+			}
+			index++;
+		}
+
+		// deal the rows to the folds
+		int[] res = new int[order.length];
+		int pos = 0;
+		for (int start = 0; pos < order.length; start++) {
+			for (int j = start; j < order.length; j += folds) {
+				res[pos++] = order[j];
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * The test set of the given fold, as Instances.testCV().
+	 */
+	public static int[] testFold(int[] order, int folds, int fold) {
+		int size = foldSize(order.length, folds, fold);
+		int[] res = new int[size];
+		System.arraycopy(order, foldStart(order.length, folds, fold), res, 0, size);
+		return res;
+	}
+
+	/**
+	 * The training set of the given fold, shuffled with the given random
+	 * generator, as Instances.trainCV(folds, fold, rand).
+	 */
+	public static int[] trainFold(int[] order, int folds, int fold, Random rand) {
+		int size = foldSize(order.length, folds, fold);
+		int first = foldStart(order.length, folds, fold);
+		int[] res = new int[order.length - size];
+		System.arraycopy(order, 0, res, 0, first);
+		System.arraycopy(order, first + size, res, first, order.length - first - size);
+		for (int j = res.length - 1; j > 0; j--) {
+			swap(res, j, rand.nextInt(j + 1));
+		}
+		return res;
+	}
+
+	/**
+	 * The folds of a cross-validation with the given seed, drawn as
+	 * Evaluation.crossValidateModel() does: the order of the rows first, then
+	 * the test and training sets of each fold, in fold order.
+	 */
+	public Folds folds(int seed, int numFolds) {
+		Random rand = new Random(seed);
+		int[] order = foldOrder(rand, numFolds);
+		int[][] test = new int[numFolds][];
+		int[][] train = new int[numFolds][];
+		for (int n = 0; n < numFolds; n++) {
+			test[n] = testFold(order, numFolds, n);
+			train[n] = trainFold(order, numFolds, n, rand);
+		}
+		return new Folds(order, test, train);
+	}
+
+	private static int foldSize(int numRows, int folds, int fold) {
+		if (folds > numRows) {
+			throw new IllegalArgumentException("Can't have more folds than instances!");
+		}
+		return numRows / folds + (fold < numRows % folds ? 1 : 0);
+	}
+
+	private static int foldStart(int numRows, int folds, int fold) {
+		return fold * (numRows / folds) + Math.min(fold, numRows % folds);
+	}
+
+	private static void swap(int[] a, int i, int j) {
+		int tmp = a[i];
+		a[i] = a[j];
+		a[j] = tmp;
+	}
+
+
+	/**
+	 * The positions of the rows of the folds of a cross-validation. The arrays
+	 * must not be modified, so that they can be shared by the evaluations of
+	 * several classifiers.
+	 */
+	public static class Folds {
+		public final int[] order;
+		public final int[][] test;
+		public final int[][] train;
+
+		Folds(int[] order, int[][] test, int[][] train) {
+			this.order = order;
+			this.test = test;
+			this.train = train;
+		}
+
+		public int size() {
+			return test.length;
+		}
+	}
+
+}
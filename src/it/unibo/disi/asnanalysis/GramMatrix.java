@@ -0,0 +1,271 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The linear kernel values (dot products) of all the pairs of rows of a group
+ * (RF, Area, ...), shared by the SVMs of all its folds (see
+ * FastSMO.setGramMatrix()).
+ *
+ * The rows are the ones of the group preprocessed as FastSMO preprocesses a
+ * training set (missing values replaced, nominal attributes binarized,
+ * normalized): the kernel of a fold differs only on the columns whose
+ * preprocessing depends on the rows of the fold (e.g. an attribute whose
+ * maximum is in the test fold), which FastSMO corrects on its own rows.
+ *
+ * If the lower triangle of the matrix fits in the budget, it is computed at
+ * once, in blocks of BLOCK rows on the threads of the analyses. Otherwise,
+ * the recently used rows are kept, as many as fit in the budget, and their
+ * values are computed on first use (a row that is dropped and used again
+ * starts empty). The rows to drop are chosen as in an LRU cache, approximated
+ * by the CLOCK algorithm so that reading a kept row takes no lock. A row is
+ * kept from the second time it is missed, so that the rows used once (most of
+ * them, when SMO scans the training set) do not push out the ones used at
+ * every step. The values can be stored as floats, halving the memory at the
+ * cost of their precision.
+ *
+ * A full matrix can also be built column by column (see incremental()), e.g.
+ * for nested subsets of features: each column adds its outer product to the
+ * matrix, in the order of the columns, which gives the same values as the dot
+ * products of the rows.
+ */
+public class GramMatrix {
+
+	private static final int BLOCK = 64;
+
+	private final int numRows;
+	private int numValues;
+	private double[] values;          // numRows x numValues, without the class
+	private final int[] rowOf;        // the row of each row of the group, -1 if not used
+	private final boolean useFloat;
+	private double[] doubles;         // lower triangle, row by row
+	private float[] floats;
+	// if not full: the kept rows (double[] or float[], null if not kept), in the slots of the clock
+	private final AtomicReferenceArray<Object> rows;
+	private final int[] slots;
+	private final boolean[] referenced;
+	private final boolean[] missed;
+	private int used;
+	private int hand;
+
+
+	/**
+	 * @param values the preprocessed rows, numRows x numValues
+	 * @param rowOf the row of each row of the group (-1 for the rows without
+	 * class or weight, which are not used for training)
+	 * @param budget the memory (in bytes) the matrix may use
+	 */
+	public GramMatrix(double[] values, int numRows, int numValues, int[] rowOf, long budget, boolean useFloat) throws Exception {
+		this.numRows = numRows;
+		this.numValues = numValues;
+		this.values = values;
+		this.rowOf = rowOf;
+		this.useFloat = useFloat;
+		int bytes = useFloat ? 4 : 8;
+		long triangle = (long) numRows * (numRows + 1) / 2;
+		if (triangle * bytes <= budget && triangle <= Integer.MAX_VALUE - 8) {
+			rows = null;
+			slots = null;
+			referenced = null;
+			missed = null;
+			if (useFloat) {
+				floats = new float[(int) triangle];
+			} else {
+				doubles = new double[(int) triangle];
+			}
+			update(null);
+		} else {
+			int capacity = (int) Math.max(2, Math.min(numRows, budget / ((long) numRows * bytes)));
+			rows = new AtomicReferenceArray<Object>(numRows);
+			slots = new int[capacity];
+			referenced = new boolean[numRows];
+			missed = new boolean[numRows];
+		}
+	}
+
+	/**
+	 * An empty matrix (no columns) of the given rows, to which the columns are
+	 * added by addColumn(), or null if the matrix does not fit in the budget.
+	 */
+	public static GramMatrix incremental(int numRows, int[] rowOf, long budget) throws Exception {
+		long triangle = (long) numRows * (numRows + 1) / 2;
+		if (8 * triangle > budget || triangle > Integer.MAX_VALUE - 8) {
+			return null;
+		}
+		return new GramMatrix(new double[0], numRows, 0, rowOf, budget, false);
+	}
+
+	/**
+	 * Adds a column (the value of each row) to a full matrix.
+	 */
+	public void addColumn(double[] column) throws Exception {
+		if (rows != null) {
+			throw new IllegalStateException("Columns can only be added to a full Gram matrix");
+		}
+		double[] extended = new double[numRows * (numValues + 1)];
+		for (int r = 0; r < numRows; r++) {
+			System.arraycopy(values, r * numValues, extended, r * (numValues + 1), numValues);
+			extended[r * (numValues + 1) + numValues] = column[r];
+		}
+		values = extended;
+		numValues++;
+		update(column);
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numValues() {
+		return numValues;
+	}
+
+	/**
+	 * The row of the matrix of a row of the group, -1 if not used.
+	 */
+	public int row(int position) {
+		return rowOf[position];
+	}
+
+	/**
+	 * A preprocessed value of a row.
+	 */
+	public double value(int row, int k) {
+		return values[row * numValues + k];
+	}
+
+	/**
+	 * The kernel value of two rows.
+	 */
+	public double kernel(int r1, int r2) {
+		if (rows == null) {
+			long pos = r1 >= r2 ? (long) r1 * (r1 + 1) / 2 + r2 : (long) r2 * (r2 + 1) / 2 + r1;
+			return useFloat ? floats[(int) pos] : doubles[(int) pos];
+		}
+		Object row = rows.get(r1);
+		if (row == null) {
+			row = rows.get(r2);
+			if (row != null) {
+				int r = r1;
+				r1 = r2;
+				r2 = r;
+			} else {
+				row = keep(r1);
+				if (row == null) {
+					return dot(r1, r2);
+				}
+			}
+		}
+		referenced[r1] = true;
+		// concurrent readers of a row may both compute a value, and store the same one
+		if (useFloat) {
+			float[] values = (float[]) row;
+			if (Float.isNaN(values[r2])) {
+				values[r2] = (float) dot(r1, r2);
+			}
+			return values[r2];
+		}
+		double[] values = (double[]) row;
+		if (Double.isNaN(values[r2])) {
+			values[r2] = dot(r1, r2);
+		}
+		return values[r2];
+	}
+
+	/**
+	 * Computes the lower triangle (column null), or adds the outer product of
+	 * a column to it, one task per block of rows.
+	 */
+	private void update(double[] column) throws Exception {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		List<Long> costs = new ArrayList<Long>();
+		for (int start = 0; start < numRows; start += BLOCK) {
+			int first = start;
+			int last = Math.min(numRows, start + BLOCK);
+			costs.add((long) (last - first) * last);
+			tasks.add(() -> {
+				// the columns by blocks too, so that both blocks of rows stay in the cache
+				for (int colStart = 0; colStart < last; colStart += BLOCK) {
+					for (int r1 = first; r1 < last; r1++) {
+						int colEnd = Math.min(r1 + 1, colStart + BLOCK);
+						long pos = (long) r1 * (r1 + 1) / 2;
+						for (int r2 = colStart; r2 < colEnd; r2++) {
+							if (column != null) {
+								doubles[(int) (pos + r2)] += column[r1] * column[r2];
+							} else if (useFloat) {
+								floats[(int) (pos + r2)] = (float) dot(r1, r2);
+							} else {
+								doubles[(int) (pos + r2)] = dot(r1, r2);
+							}
+						}
+					}
+				}
+				return null;
+			});
+		}
+		long[] cost = new long[costs.size()];
+		for (int i = 0; i < cost.length; i++) {
+			cost[i] = costs.get(i);
+		}
+		AsnAnalysis.executor.invokeAll(tasks, cost);
+	}
+
+	/**
+	 * Keeps a row missed for the second time, in place of a row not used since
+	 * the hand of the clock last passed it, and returns it; null for a row
+	 * missed for the first time.
+	 */
+	private synchronized Object keep(int r) {
+		Object row = rows.get(r);
+		if (row != null) {
+			return row;
+		}
+		if (!missed[r]) {
+			missed[r] = true;
+			return null;
+		}
+		if (used < slots.length) {
+			slots[used++] = r;
+		} else {
+			while (referenced[slots[hand]]) {
+				referenced[slots[hand]] = false;
+				hand = (hand + 1) % slots.length;
+			}
+			rows.set(slots[hand], null);
+			slots[hand] = r;
+			hand = (hand + 1) % slots.length;
+		}
+		row = newRow();
+		rows.set(r, row);
+		return row;
+	}
+
+	/**
+	 * A row of the matrix with no value computed yet (NaN).
+	 */
+	private Object newRow() {
+		if (useFloat) {
+			float[] row = new float[numRows];
+			Arrays.fill(row, Float.NaN);
+			return row;
+		}
+		double[] row = new double[numRows];
+		Arrays.fill(row, Double.NaN);
+		return row;
+	}
+
+	private double dot(int r1, int r2) {
+		int p1 = r1 * numValues;
+		int p2 = r2 * numValues;
+		double result = 0;
+		for (int k = 0; k < numValues; k++) {
+			result += values[p1 + k] * values[p2 + k];
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,263 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+/**
+ * Evaluates a grid of classifier configurations on a group (-op Tune) with
+ * the cross-validation of the analyses, i.e. the same seed and folds as
+ * doSvmClassification(): the configurations evaluated to the end get the
+ * F-measure that the analyses would report with their options.
+ *
+ * The folds are drawn once per group and shared by the configurations, which
+ * are evaluated concurrently, one fold after the other. After the first
+ * folds (minFolds), a configuration is abandoned when it is clearly
+ * dominated, i.e. when the best F-measure it could still reach (all the rows
+ * of the remaining folds classified correctly) is lower than the worst
+ * F-measure another configuration could end with (all the rows of its
+ * remaining folds misclassified). The F-measure is the one of the first class
+ * value, as in the output of the analyses.
+ *
+ * The F-measure of the best configuration is optimistic, since it is the one
+ * of the folds the configuration is selected on: nested() estimates the
+ * F-measure of the selection itself, with an outer cross-validation.
+ */
+public class GridSearch {
+
+	/**
+	 * A configuration of the grid.
+	 */
+	public static class Config {
+		final String classifier;
+		final String c;
+		final String exponent;
+		final String ridge;
+		final String classifierSpec;
+		final Callable<Classifier> factory;
+
+		/**
+		 * @param c, exponent, ridge the values of the parameters, "" for the
+		 * parameters of other classifiers
+		 */
+		public Config(String classifier, String c, String exponent, String ridge, String classifierSpec, Callable<Classifier> factory) {
+			this.classifier = classifier;
+			this.c = c;
+			this.exponent = exponent;
+			this.ridge = ridge;
+			this.classifierSpec = classifierSpec;
+			this.factory = factory;
+		}
+	}
+
+	/**
+	 * The evaluation of a configuration on the folds evaluated before it was
+	 * completed or abandoned.
+	 */
+	public static class Result {
+		final Config config;
+		final int folds;
+		final Evaluation eval;
+
+		Result(Config config, int folds, Evaluation eval) {
+			this.config = config;
+			this.folds = folds;
+			this.eval = eval;
+		}
+	}
+
+
+	private final List<Config> configs;
+	private final int seed;
+	private final int numFolds;
+	private final int minFolds;
+
+
+	/**
+	 * @param minFolds the folds evaluated by every configuration before it
+	 * can be abandoned
+	 */
+	public GridSearch(List<Config> configs, int seed, int numFolds, int minFolds) {
+		this.configs = configs;
+		this.seed = seed;
+		this.numFolds = numFolds;
+		this.minFolds = minFolds;
+	}
+
+	/**
+	 * Evaluates all the configurations on a group and returns their results in
+	 * the order of the configurations.
+	 */
+	@SuppressWarnings("try")
+	public List<Result> evaluate(FeatureView view) throws Exception {
+		FeatureView.Folds folds;
+		double[][] remaining;
+		try (RunReport.Timer t = RunReport.time("cv/split")) {
+			folds = view.folds(seed, numFolds);
+			remaining = remainingWeights(view, folds);
+		}
+		Instances all = view.toInstances(folds.order);
+
+		Result[] results = new Result[configs.size()];
+		Evaluation[] evals = new Evaluation[configs.size()];
+		String[] keys = new String[configs.size()];
+		List<Integer> running = new ArrayList<Integer>();
+		for (int i = 0; i < configs.size(); i++) {
+			Config config = configs.get(i);
+			if (AsnAnalysis.resultCache != null) {
+				try (RunReport.Timer t = RunReport.time("cv/cache")) {
+					keys[i] = AsnAnalysis.resultCache.key(view, config.classifierSpec, seed, numFolds);
+					double[][] confusionMatrix = AsnAnalysis.resultCache.get(keys[i]);
+					if (confusionMatrix != null) {
+						results[i] = new Result(config, numFolds, ResultCache.toEvaluation(view.toInstances(), confusionMatrix));
+						continue;
+					}
+				}
+			}
+			evals[i] = new Evaluation(all);
+			running.add(i);
+		}
+
+		// the folds are evaluated in rounds, so that the configurations
+		// abandoned do not depend on the scheduling of the tasks
+		for (int n = 0; n < folds.size() && !running.isEmpty(); n++) {
+			int fold = n;
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(running.size());
+			for (int i : running) {
+				tasks.add(() -> {
+					Classifier cls;
+					try (RunReport.Timer t = RunReport.time("cv/train", fold)) {
+						cls = configs.get(i).factory.call();
+						cls.buildClassifier(view.toInstances(folds.train[fold]));
+					}
+					try (RunReport.Timer t = RunReport.time("cv/evaluate", fold)) {
+						evals[i].evaluateModel(cls, view.toInstances(folds.test[fold]));
+					}
+					return null;
+				});
+			}
+			AsnAnalysis.executor.invokeAll(tasks);
+
+			if (n + 1 < minFolds || n + 1 == folds.size()) {
+				continue;
+			}
+			double best = 0;
+			for (int i = 0; i < results.length; i++) {
+				if (results[i] != null && results[i].folds == numFolds) {
+					best = Math.max(best, fMeasure(results[i].eval.confusionMatrix(), 0, 0, false));
+				} else if (running.contains(i)) {
+					best = Math.max(best, fMeasure(evals[i].confusionMatrix(), remaining[n + 1][0], remaining[n + 1][1], false));
+				}
+			}
+			List<Integer> dominated = new ArrayList<Integer>();
+			for (int i : running) {
+				if (fMeasure(evals[i].confusionMatrix(), remaining[n + 1][0], remaining[n + 1][1], true) < best) {
+					results[i] = new Result(configs.get(i), n + 1, evals[i]);
+					dominated.add(i);
+				}
+			}
+			running.removeAll(dominated);
+		}
+
+		for (int i : running) {
+			results[i] = new Result(configs.get(i), numFolds, evals[i]);
+			if (AsnAnalysis.resultCache != null) {
+				AsnAnalysis.resultCache.put(keys[i], evals[i].confusionMatrix());
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * The nested cross-validation of the selection of the configuration: for
+	 * each fold of evaluate() (the outer folds), the grid is evaluated on the
+	 * training rows of the fold, with folds of their own (the inner folds),
+	 * and the best configuration is trained on the training rows and
+	 * evaluated on the test rows of the outer fold.
+	 */
+	@SuppressWarnings("try")
+	public Evaluation nested(FeatureView view) throws Exception {
+		FeatureView.Folds folds;
+		try (RunReport.Timer t = RunReport.time("cv/split")) {
+			folds = view.folds(seed, numFolds);
+		}
+		Evaluation eval = new Evaluation(view.toInstances(folds.order));
+		for (int n = 0; n < folds.size(); n++) {
+			int best = best(evaluate(view.rows(folds.train[n])));
+			if (best < 0) {
+				throw new IllegalStateException("No configuration was evaluated on all the inner folds");
+			}
+			Classifier cls;
+			try (RunReport.Timer t = RunReport.time("cv/train", n)) {
+				cls = configs.get(best).factory.call();
+				cls.buildClassifier(view.toInstances(folds.train[n]));
+			}
+			try (RunReport.Timer t = RunReport.time("cv/evaluate", n)) {
+				eval.evaluateModel(cls, view.toInstances(folds.test[n]));
+			}
+		}
+		return eval;
+	}
+
+	/**
+	 * The configuration with the highest F-measure among the ones evaluated
+	 * on all the folds (the first one on ties), -1 if none.
+	 */
+	public int best(List<Result> results) {
+		int best = -1;
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i).folds == numFolds && (best < 0 || results.get(i).eval.fMeasure(0) > results.get(best).eval.fMeasure(0))) {
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The F-measure of the first class value once the remaining rows are
+	 * classified: all correctly (upper bound) or all wrongly (lower bound).
+	 */
+	private static double fMeasure(double[][] confusionMatrix, double remainingPositive, double remainingNegative, boolean upper) {
+		double truePositive = confusionMatrix[0][0];
+		double falseNegative = 0;
+		double falsePositive = 0;
+		for (int i = 1; i < confusionMatrix.length; i++) {
+			falseNegative += confusionMatrix[0][i];
+			falsePositive += confusionMatrix[i][0];
+		}
+		if (upper) {
+			truePositive += remainingPositive;
+		} else {
+			falseNegative += remainingPositive;
+			falsePositive += remainingNegative;
+		}
+		double denominator = 2 * truePositive + falsePositive + falseNegative;
+		return denominator == 0 ? 0 : 2 * truePositive / denominator;
+	}
+
+	/**
+	 * The weights of the rows of the first class value and of the other class
+	 * values (the rows without class are not evaluated) in the folds from the
+	 * n-th one (0-based) to the last one, for n = 0..folds.
+	 */
+	private static double[][] remainingWeights(FeatureView view, FeatureView.Folds folds) {
+		double[][] res = new double[folds.size() + 1][2];
+		for (int n = folds.size() - 1; n >= 0; n--) {
+			res[n][0] = res[n + 1][0];
+			res[n][1] = res[n + 1][1];
+			for (int pos : folds.test[n]) {
+				int cls = view.classCode(pos);
+				if (cls >= 0) {
+					res[n][cls == 0 ? 0 : 1] += view.weight(pos);
+				}
+			}
+		}
+		return res;
+	}
+
+}
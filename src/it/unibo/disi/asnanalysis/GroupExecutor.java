@@ -0,0 +1,185 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent units of work (one per Recruitment Field, Area, ...) on a
+ * work-stealing pool of threads and returns their results in submission
+ * order, so that the output of a parallel run is identical to the sequential
+ * one. The tasks inherit the RunReport and the group of the submitting thread.
+ *
+ * Given the estimated cost of each task, the most expensive tasks are started
+ * first, so that the largest groups do not start last and keep a single
+ * thread busy while the others are idle. Tasks submitted from a worker thread
+ * (e.g. the folds of the cross-validation of a group) are forked on the same
+ * pool: they are run by the submitting thread while it waits for them, and
+ * stolen by the idle threads.
+ */
+public class GroupExecutor {
+
+	private final ForkJoinPool pool;
+	private final int numThreads;
+
+
+	public GroupExecutor(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+		AtomicInteger counter = new AtomicInteger();
+		ForkJoinPool.ForkJoinWorkerThreadFactory factory = p -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			t.setName("asn-worker-" + counter.incrementAndGet());
+			return t;
+		};
+		this.pool = new ForkJoinPool(this.numThreads, factory, null, false);
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Executes all the tasks and returns their results in the same order.
+	 */
+	public <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception {
+		return invokeAll(tasks, null);
+	}
+
+	/**
+	 * Executes all the tasks, starting from the ones with the highest cost
+	 * (e.g. rows x attributes of a group), and returns their results in the
+	 * order of the tasks.
+	 *
+	 * @param costs the estimated cost of each task, or null if unknown
+	 */
+	public <T> List<T> invokeAll(List<Callable<T>> tasks, long[] costs) throws Exception {
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (numThreads == 1 || tasks.size() <= 1) {
+			for (Callable<T> task : tasks) {
+				results.add(RunReport.propagate(task).call());
+			}
+			return results;
+		}
+
+		List<ForkJoinTask<Outcome<T>>> futures = new ArrayList<ForkJoinTask<Outcome<T>>>(tasks.size());
+		for (Callable<T> task : tasks) {
+			Callable<T> propagated = RunReport.propagate(task);
+			futures.add(ForkJoinTask.adapt(() -> Outcome.of(propagated)));
+		}
+		boolean inPool = ForkJoinTask.getPool() == pool;
+		for (int n : startOrder(costs, tasks.size())) {
+			if (inPool) {
+				futures.get(n).fork();
+			} else {
+				pool.execute(futures.get(n));
+			}
+		}
+		try {
+			for (ForkJoinTask<Outcome<T>> future : futures) {
+				results.add(future.join().get());
+			}
+		} catch (Exception e) {
+			for (ForkJoinTask<Outcome<T>> future : futures) {
+				future.cancel(false);
+			}
+			throw e;
+		}
+		return results;
+	}
+
+	/**
+	 * The indices of the tasks in the order they are started: by decreasing
+	 * cost, or in submission order without costs. Tasks forked from a worker
+	 * are taken by their own thread from the last one, and by the other
+	 * threads from the first one, so the order is reversed for them.
+	 */
+	private static int[] startOrder(long[] costs, int numTasks) {
+		Integer[] order = new Integer[numTasks];
+		for (int n = 0; n < numTasks; n++) {
+			order[n] = n;
+		}
+		if (costs != null) {
+			Arrays.sort(order, (a, b) -> Long.compare(costs[b], costs[a]));
+		}
+		if (ForkJoinTask.inForkJoinPool()) {
+			Collections.reverse(Arrays.asList(order));
+		}
+		int[] res = new int[numTasks];
+		for (int n = 0; n < numTasks; n++) {
+			res[n] = order[n];
+		}
+		return res;
+	}
+
+	/**
+	 * Runs a task that waits for something else than the tasks of the pool
+	 * (e.g. a remote worker): on a worker thread, the pool may start another
+	 * thread meanwhile, so that the other tasks keep all the threads busy.
+	 */
+	public static <T> T blocking(Callable<T> task) throws Exception {
+		Blocker<T> blocker = new Blocker<T>(task);
+		ForkJoinPool.managedBlock(blocker);
+		return blocker.outcome.get();
+	}
+
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+
+	private static class Blocker<T> implements ForkJoinPool.ManagedBlocker {
+		final Callable<T> task;
+		Outcome<T> outcome;
+
+		Blocker(Callable<T> task) {
+			this.task = task;
+		}
+
+		@Override
+		public boolean block() {
+			outcome = Outcome.of(task);
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return outcome != null;
+		}
+	}
+
+
+	/**
+	 * The result of a task, or the exception it threw.
+	 */
+	private static class Outcome<T> {
+		final T value;
+		final Exception error;
+
+		private Outcome(T value, Exception error) {
+			this.value = value;
+			this.error = error;
+		}
+
+		static <T> Outcome<T> of(Callable<T> task) {
+			try {
+				return new Outcome<T>(task.call(), null);
+			} catch (Exception e) {
+				return new Outcome<T>(null, e);
+			}
+		}
+
+		T get() throws Exception {
+			if (error != null) {
+				throw error;
+			}
+			return value;
+		}
+	}
+
+}
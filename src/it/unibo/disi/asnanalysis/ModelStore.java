@@ -0,0 +1,152 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.Version;
+
+/**
+ * Persistent store of the classifiers trained on all the rows of each RF and
+ * Area (-models), used to score new applicants without training them again
+ * (-op Predict).
+ *
+ * Each model is stored in a file of the store folder, named after the kind of
+ * group (RF or Area), the group, the level and a hash of the classifier
+ * options, made of a header (magic number, version of the format, kind, group,
+ * level, classifier options and version of Weka) followed by the serialized
+ * classifier and the attributes it was trained on (no rows), compressed with
+ * GZIP. The models stored with another version of the format or of Weka are
+ * ignored.
+ */
+public class ModelStore {
+
+	static final String SUFFIX = ".model";
+
+	private static final int MAGIC = 0x41534E4D; // "ASNM"
+	private static final int VERSION = 1;
+
+	private final File dir;
+
+
+	/**
+	 * A stored classifier.
+	 */
+	public static class Model {
+		final String kind;
+		final String group;
+		final int level;
+		final String classifierSpec;
+		final Classifier classifier;
+		final Instances header;
+
+		Model(String kind, String group, int level, String classifierSpec, Classifier classifier, Instances header) {
+			this.kind = kind;
+			this.group = group;
+			this.level = level;
+			this.classifierSpec = classifierSpec;
+			this.classifier = classifier;
+			this.header = header;
+		}
+	}
+
+
+	public ModelStore(File dir) throws IOException {
+		this.dir = dir;
+		Files.createDirectories(dir.toPath());
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	/**
+	 * Stores (or replaces) the model of a group.
+	 *
+	 * @param kind "RF" or "Area"
+	 * @param header the attributes of the training set
+	 */
+	public void put(String kind, String group, int level, String classifierSpec, Classifier classifier, Instances header) throws IOException {
+		String name = fileName(kind, group, level, classifierSpec);
+		Path tmp = Files.createTempFile(dir.toPath(), name, ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(kind);
+				out.writeUTF(group);
+				out.writeInt(level);
+				out.writeUTF(classifierSpec);
+				out.writeUTF(Version.VERSION);
+				ObjectOutputStream objects = new ObjectOutputStream(new GZIPOutputStream(out));
+				objects.writeObject(classifier);
+				objects.writeObject(new Instances(header, 0));
+				objects.close();
+			}
+			Files.move(tmp, new File(dir, name).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Loads all the models of the given level trained with the given
+	 * classifier options, in the order of their files.
+	 */
+	public List<Model> load(int level, String classifierSpec) throws IOException {
+		List<Model> models = new ArrayList<Model>();
+		File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+		if (files == null) {
+			return models;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					AsnAnalysis.LOG.info("Warning: ignoring the model " + file + " (unknown format)");
+					continue;
+				}
+				String kind = in.readUTF();
+				String group = in.readUTF();
+				int modelLevel = in.readInt();
+				String spec = in.readUTF();
+				String wekaVersion = in.readUTF();
+				if (modelLevel != level || !spec.equals(classifierSpec)) {
+					continue;
+				}
+				if (!wekaVersion.equals(Version.VERSION)) {
+					AsnAnalysis.LOG.info("Warning: ignoring the model " + file + " (trained with Weka " + wekaVersion + ")");
+					continue;
+				}
+				ObjectInputStream objects = new ObjectInputStream(new GZIPInputStream(in));
+				Classifier classifier = (Classifier) objects.readObject();
+				Instances header = (Instances) objects.readObject();
+				models.add(new Model(kind, group, modelLevel, spec, classifier, header));
+			} catch (ClassNotFoundException | ClassCastException | IOException e) {
+				AsnAnalysis.LOG.info("Warning: ignoring the unreadable model " + file + " (" + e + ")");
+			}
+		}
+		return models;
+	}
+
+	static String fileName(String kind, String group, int level, String classifierSpec) {
+		return kind + "_" + group.replace("/", "-") + "_L" + level + "_"
+				+ String.format("%08x", classifierSpec.hashCode()) + SUFFIX;
+	}
+
+}
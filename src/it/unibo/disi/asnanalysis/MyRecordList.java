@@ -1,13 +1,18 @@
 package it.unibo.disi.asnanalysis;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 
 import org.apache.commons.csv.CSVFormat;
@@ -15,58 +20,300 @@ import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.QuoteMode;
 import org.apache.commons.io.FileUtils;
 
+/**
+ * The rows of the output of an analysis. The values of the numeric columns
+ * (all the non-empty values parse as numbers) are also kept as doubles: they
+ * are sorted as numbers, and stored as doubles in the columnar output.
+ *
+ * A streaming list (see streaming()) also writes the rows of each group to
+ * &lt;FILE&gt;.partial.csv as soon as they are computed (streamGroup()), in the
+ * order the groups complete, so that the rows computed before a crash are not
+ * lost, and to a Checkpoint journal, so that a restarted run can skip the
+ * completed groups (completed()). The partial file and the journal are
+ * deleted once the sorted file is saved.
+ *
+ * The columnar output (saveColumnar()) is a binary file made of:
+ * <pre>
+ * int magic ("ASNC"), int version, int columns, int rows
+ * for each column: UTF name, byte type (0 = text, 1 = number)
+ * for each column:
+ *   number: one double per row (NaN for the empty values)
+ *   text:   int size of the dictionary, UTF values, one int index per row
+ * </pre>
+ * with the big-endian encoding of DataOutputStream.
+ */
 public class MyRecordList {
 
+	private static final int COLUMNAR_MAGIC = 0x41534E43; // "ASNC"
+	private static final int COLUMNAR_VERSION = 1;
+
 	private List<String[]> records;
+	private List<double[]> numbers;
 	private String[] header;
+	private File streamFile;
+	private CSVPrinter streamPrinter;
+	private Checkpoint checkpoint;
 	final static int SortASC = 1;
 	final static int SortDESC = -1;
 
-	
+
 	public MyRecordList() {
 		records = new ArrayList<String[]>();
+		numbers = new ArrayList<double[]>();
 	}
-		
+
+	/**
+	 * A list that streams the rows given to streamGroup() to
+	 * &lt;filename&gt;.partial.csv and to the journal &lt;filename&gt;.journal.
+	 *
+	 * @param fingerprint the fingerprint of the analysis (see Checkpoint),
+	 * null for no journal
+	 */
+	public static MyRecordList streaming(String filename, String fingerprint) throws IOException {
+		MyRecordList rl = new MyRecordList();
+		rl.streamFile = new File(filename + ".partial.csv");
+		FileUtils.forceMkdirParent(rl.streamFile);
+		if (fingerprint != null) {
+			rl.checkpoint = new Checkpoint(new File(filename + ".journal"), fingerprint);
+		}
+		return rl;
+	}
+
 	public void setHeader(String... args) {
 		this.header = args;
 	}
-	
+
 	public void addRecord(String... args) {
+		double[] values = new double[args.length];
+		for (int i = 0; i < args.length; i++) {
+			values[i] = parse(args[i]);
+		}
 		records.add(args);
+		numbers.add(values);
+	}
+
+	/**
+	 * The rows, in their current order (e.g. after sortByCol()).
+	 */
+	public List<String[]> getRecords() {
+		return Collections.unmodifiableList(records);
+	}
+
+	/**
+	 * Writes the rows of a group to the partial file and to the journal of a
+	 * streaming list as soon as they are computed, before they are added to
+	 * the list. Can be called by concurrent tasks.
+	 */
+	public synchronized void streamGroup(String key, String[]... records) throws IOException {
+		if (streamFile == null) {
+			return;
+		}
+		if (streamPrinter == null) {
+			streamPrinter = new CSVPrinter(Files.newBufferedWriter(streamFile.toPath()), CSVFormat.DEFAULT
+					.withQuoteMode(QuoteMode.MINIMAL)
+					.withHeader(header));
+		}
+		for (String[] record : records) {
+			streamPrinter.printRecord((Object[]) record);
+		}
+		streamPrinter.flush();
+		checkpoint(key, records);
+	}
+
+	/**
+	 * Writes intermediate results of a group (not rows of the output) to the
+	 * journal of a streaming list, e.g. the features selected for an RF.
+	 */
+	public void checkpoint(String key, String[]... records) throws IOException {
+		if (checkpoint != null) {
+			checkpoint.add(key, records);
+		}
+	}
+
+	/**
+	 * The rows (or intermediate results) of a group written to the journal by
+	 * a previous run with the same fingerprint, or null.
+	 */
+	public String[][] completed(String key) {
+		return checkpoint == null ? null : checkpoint.completed(key);
 	}
 
+	/**
+	 * Writes the sorted rows (through a temporary file, so that the file is
+	 * either the old one or the complete new one) and deletes the partial file
+	 * and the journal.
+	 */
 	public void saveToFile(String filename) throws IOException {
-		FileUtils.forceMkdirParent(new File(filename));
-		BufferedWriter writer = Files.newBufferedWriter(Paths.get(filename));
-	    CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT
+		File file = new File(filename);
+		FileUtils.forceMkdirParent(file);
+		Path tmp = Paths.get(filename + ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+				print(writer);
+			}
+			Files.move(tmp, Paths.get(filename), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		closeStream();
+	}
+
+	private synchronized void closeStream() throws IOException {
+		if (streamPrinter != null) {
+			streamPrinter.close();
+			streamPrinter = null;
+		}
+		if (streamFile != null) {
+			Files.deleteIfExists(streamFile.toPath());
+		}
+		if (checkpoint != null) {
+			checkpoint.delete();
+		}
+	}
+
+	/**
+	 * Writes the header and the records as CSV, as saveToFile() does.
+	 */
+	public void print(Appendable out) throws IOException {
+	    CSVPrinter csvPrinter = new CSVPrinter(out, CSVFormat.DEFAULT
 	    		.withQuoteMode(QuoteMode.MINIMAL)
                 .withHeader(header));
 	    for (String[] record : records) {
-	    	csvPrinter.printRecord(record);
+	    	csvPrinter.printRecord((Object[]) record);
 	    }
 	    csvPrinter.flush();
-		csvPrinter.close();
 	}
-	
+
+	/**
+	 * Writes the header and the records in the binary columnar format (see
+	 * above).
+	 */
+	public void saveColumnar(String filename) throws IOException {
+		FileUtils.forceMkdirParent(new File(filename));
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(filename))))) {
+			out.writeInt(COLUMNAR_MAGIC);
+			out.writeInt(COLUMNAR_VERSION);
+			out.writeInt(header.length);
+			out.writeInt(records.size());
+			for (int i = 0; i < header.length; i++) {
+				out.writeUTF(header[i]);
+				out.writeByte(isNumeric(i) ? 1 : 0);
+			}
+			for (int i = 0; i < header.length; i++) {
+				if (isNumeric(i)) {
+					for (int r = 0; r < numbers.size(); r++) {
+						out.writeDouble(number(r, i));
+					}
+					continue;
+				}
+				HashMap<String, Integer> dictionary = new HashMap<String, Integer>();
+				List<String> entries = new ArrayList<String>();
+				int[] indices = new int[records.size()];
+				for (int r = 0; r < records.size(); r++) {
+					String value = value(records.get(r), i);
+					Integer index = dictionary.get(value);
+					if (index == null) {
+						index = entries.size();
+						dictionary.put(value, index);
+						entries.add(value);
+					}
+					indices[r] = index;
+				}
+				out.writeInt(entries.size());
+				for (String entry : entries) {
+					out.writeUTF(entry);
+				}
+				for (int index : indices) {
+					out.writeInt(index);
+				}
+			}
+		}
+	}
+
 	public String toString() {
-		String res = "";
+		StringBuilder res = new StringBuilder();
 		for (String[] record : records) {
-	    	res += String.join(" - ", record) + "\n";
+			res.append(String.join(" - ", record)).append('\n');
 	    }
-		return res;
+		return res.toString();
 	}
-	
+
+	/**
+	 * Sorts the rows by a column, as numbers if the column is numeric (the
+	 * empty values last, NaN above all the numbers), as strings otherwise. Rows
+	 * with equal values keep their order.
+	 */
 	public void sortByCol(int i, int sortDirection){
-		
+		List<Integer> order = new ArrayList<Integer>(records.size());
+		for (int r = 0; r < records.size(); r++) {
+			order.add(r);
+		}
+
 		//comparator by specific col
-		Comparator<String[]> comp = new Comparator<String[]>(){
-			public int compare(String[] a, String[] b){
+		Comparator<Integer> comp;
+		if (isNumeric(i)) {
+			comp = (a, b) -> {
+				boolean emptyA = value(records.get(a), i).isEmpty();
+				boolean emptyB = value(records.get(b), i).isEmpty();
+				if (emptyA || emptyB) {
+					return Boolean.compare(emptyA, emptyB);
+				}
 				//reverse result if DESC (sortDirection = -1)
-				return sortDirection * a[i].compareTo(b[i]);
+				return sortDirection * Double.compare(number(a, i), number(b, i));
+			};
+		} else {
+			comp = (a, b) -> sortDirection * records.get(a)[i].compareTo(records.get(b)[i]);
+		}
+		Collections.sort(order, comp);
+
+		List<String[]> sortedRecords = new ArrayList<String[]>(records.size());
+		List<double[]> sortedNumbers = new ArrayList<double[]>(records.size());
+		for (int r : order) {
+			sortedRecords.add(records.get(r));
+			sortedNumbers.add(numbers.get(r));
+		}
+		records = sortedRecords;
+		numbers = sortedNumbers;
+	}
+
+	/**
+	 * Whether all the non-empty values of a column are numbers.
+	 */
+	private boolean isNumeric(int i) {
+		for (int r = 0; r < records.size(); r++) {
+			String value = value(records.get(r), i);
+			if (Double.isNaN(number(r, i)) && !value.isEmpty() && !value.equals("NaN")) {
+				return false;
 			}
-		};
-		
-		Collections.sort(records, comp);
+		}
+		return true;
 	}
-	
+
+	private double number(int r, int i) {
+		double[] values = numbers.get(r);
+		return i < values.length ? values[i] : Double.NaN;
+	}
+
+	private static String value(String[] record, int i) {
+		return i < record.length && record[i] != null ? record[i] : "";
+	}
+
+	/**
+	 * The value of a number, NaN if the string is not a number.
+	 */
+	private static double parse(String s) {
+		if (s == null || s.isEmpty()) {
+			return Double.NaN;
+		}
+		char c = s.charAt(0);
+		if (!(c >= '0' && c <= '9') && c != '-' && c != '+' && c != '.') {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
 }
@@ -0,0 +1,191 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import weka.classifiers.Evaluation;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Version;
+
+/**
+ * Persistent cache of the outcomes of the cross-validations.
+ *
+ * Each outcome is stored as the confusion matrix of the cross-validation (the
+ * only part of the Evaluation used by the analyses, i.e. to compute precision,
+ * recall and F-measure) in a file of the cache folder, named after a SHA-256
+ * hash of:
+ * <ul>
+ * <li>the content of the dataset (header, values and weights),</li>
+ * <li>the classifier and its options,</li>
+ * <li>the seed and the number of folds,</li>
+ * <li>the version of Weka.</li>
+ * </ul>
+ * so that a group whose data did not change is not evaluated again.
+ */
+public class ResultCache {
+
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".cm";
+
+	private final File dir;
+
+
+	public ResultCache(File dir) throws IOException {
+		this.dir = dir;
+		Files.createDirectories(dir.toPath());
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	/**
+	 * The key of the cross-validation of the given view with the given
+	 * classifier.
+	 */
+	public String key(FeatureView view, String classifierSpec, int seed, int folds) {
+		MessageDigest md = sha256();
+		update(md, "asn-cv " + VERSION + " " + Version.VERSION);
+		update(md, classifierSpec);
+		update(md, seed + " " + folds);
+		update(md, fingerprint(view));
+		return hex(md.digest());
+	}
+
+	/**
+	 * A SHA-256 hash of the header and of the content of a view, the same as
+	 * the one of the Instances built by view.toInstances().
+	 */
+	public static String fingerprint(FeatureView view) {
+		MessageDigest md = sha256();
+		Instances header = view.header();
+		update(md, header.numAttributes() + " " + header.classIndex());
+		for (int i = 0; i < header.numAttributes(); i++) {
+			Attribute attr = header.attribute(i);
+			update(md, attr.type() + " " + attr.name());
+			for (int v = 0; attr.isNominal() && v < attr.numValues(); v++) {
+				update(md, attr.value(v));
+			}
+		}
+		byte[] buf = new byte[8 * (header.numAttributes() + 1)];
+		for (int p = 0; p < view.numRows(); p++) {
+			putLong(buf, 0, Double.doubleToLongBits(view.weight(p)));
+			for (int i = 0; i < header.numAttributes(); i++) {
+				putLong(buf, 8 * (i + 1), Double.doubleToLongBits(view.value(p, i)));
+			}
+			md.update(buf);
+		}
+		return hex(md.digest());
+	}
+
+	/**
+	 * The cached confusion matrix, or null on a cache miss.
+	 */
+	public double[][] get(String key) throws IOException {
+		File file = new File(dir, key + SUFFIX);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			int numClasses = Integer.parseInt(reader.readLine().trim());
+			double[][] matrix = new double[numClasses][numClasses];
+			for (int i = 0; i < numClasses; i++) {
+				String[] cells = reader.readLine().trim().split(" ");
+				for (int j = 0; j < numClasses; j++) {
+					matrix[i][j] = Double.parseDouble(cells[j]);
+				}
+			}
+			return matrix;
+		} catch (RuntimeException e) {
+			AsnAnalysis.LOG.info("Warning: ignoring the corrupted cache entry " + file + " (" + e + ")");
+			return null;
+		}
+	}
+
+	public void put(String key, double[][] matrix) throws IOException {
+		Path tmp = Files.createTempFile(dir.toPath(), key, ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				writer.write(Integer.toString(matrix.length));
+				writer.newLine();
+				for (double[] row : matrix) {
+					StringBuilder sb = new StringBuilder();
+					for (double cell : row) {
+						if (sb.length() > 0) {
+							sb.append(' ');
+						}
+						sb.append(Double.toString(cell));
+					}
+					writer.write(sb.toString());
+					writer.newLine();
+				}
+			}
+			Files.move(tmp, new File(dir, key + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Rebuilds an Evaluation with the given confusion matrix. Only the
+	 * statistics derived from the confusion matrix (precision, recall,
+	 * F-measure, accuracy, ...) are meaningful.
+	 */
+	public static Evaluation toEvaluation(Instances dataSet, double[][] matrix) throws Exception {
+		Evaluation eval = new Evaluation(dataSet);
+		for (int actual = 0; actual < matrix.length; actual++) {
+			for (int predicted = 0; predicted < matrix.length; predicted++) {
+				if (matrix[actual][predicted] == 0) {
+					continue;
+				}
+				Instance inst = new DenseInstance(matrix[actual][predicted], new double[dataSet.numAttributes()]);
+				inst.setDataset(dataSet);
+				inst.setClassValue(actual);
+				double[] dist = new double[matrix.length];
+				dist[predicted] = 1;
+				eval.evaluateModelOnce(dist, inst);
+			}
+		}
+		return eval;
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest md, String s) {
+		md.update(s.getBytes(StandardCharsets.UTF_8));
+		md.update((byte) 0);
+	}
+
+	private static void putLong(byte[] buf, int pos, long v) {
+		for (int b = 7; b >= 0; b--) {
+			buf[pos + b] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,341 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.QuoteMode;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Wall time, CPU time and allocated bytes of the stages of a run (loading,
+ * filtering, feature selection, training, ...), per group (RF or Area) and
+ * per fold.
+ *
+ * The report and the group being analysed are bound to the current thread
+ * (and propagated by GroupExecutor to the tasks it runs), so that stages are
+ * recorded with:
+ * <pre>
+ * try (RunReport.Timer t = RunReport.time("cv")) {
+ *     ...
+ * }
+ * </pre>
+ * The timer is not referenced in the body, so the methods that record stages
+ * suppress the "try" lint warning.
+ *
+ * CPU time and allocated bytes are the ones of the thread that runs the stage:
+ * when the folds of a cross-validation are trained on other threads, their
+ * cost is reported by the "cv/train" stages of the folds. For this reason the
+ * totals of the groups only sum the innermost stages, and not the stages that
+ * contain other ones ("job", "cv" and "tune").
+ */
+public class RunReport {
+
+	private static final ThreadLocal<RunReport> currentReport = new ThreadLocal<RunReport>();
+	private static final ThreadLocal<String> currentGroup = new ThreadLocal<String>();
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private static final List<String> CONTAINER_STAGES = Arrays.asList("job", "cv", "tune");
+
+	private final long startNanos = System.nanoTime();
+	private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<Entry>();
+
+
+	/**
+	 * A measured stage.
+	 */
+	public static class Entry {
+		final String stage;
+		final String group;
+		final int fold;
+		final String thread;
+		final long startNanos; // System.nanoTime() at the start of the stage
+		final long wallNanos;
+		final long cpuNanos;
+		final long allocatedBytes;
+
+		Entry(String stage, String group, int fold, String thread, long startNanos, long wallNanos, long cpuNanos, long allocatedBytes) {
+			this.stage = stage;
+			this.group = group;
+			this.fold = fold;
+			this.thread = thread;
+			this.startNanos = startNanos;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+
+	/**
+	 * A running stage, recorded when closed.
+	 */
+	public static class Timer implements AutoCloseable {
+		private final RunReport report;
+		private final String stage;
+		private final String group;
+		private final int fold;
+		private final long wallStart;
+		private final long cpuStart;
+		private final long allocStart;
+
+		private Timer(RunReport report, String stage, String group, int fold) {
+			this.report = report;
+			this.stage = stage;
+			this.group = group;
+			this.fold = fold;
+			this.wallStart = System.nanoTime();
+			this.cpuStart = report == null ? 0 : threadCpuTime();
+			this.allocStart = report == null ? 0 : threadAllocatedBytes();
+		}
+
+		@Override
+		public void close() {
+			if (report == null) {
+				return;
+			}
+			long wall = System.nanoTime() - wallStart;
+			long cpu = cpuStart < 0 ? -1 : threadCpuTime() - cpuStart;
+			long alloc = allocStart < 0 ? -1 : threadAllocatedBytes() - allocStart;
+			report.entries.add(new Entry(stage, group, fold, Thread.currentThread().getName(),
+					wallStart, wall, cpu, alloc));
+		}
+	}
+
+
+	/**
+	 * Binds the report to the current thread (null to unbind it).
+	 */
+	public static void setCurrent(RunReport report) {
+		currentReport.set(report);
+	}
+
+	public static RunReport current() {
+		return currentReport.get();
+	}
+
+	/**
+	 * Sets the group (RF, Area, input file, ...) the current thread is working on.
+	 */
+	public static void setGroup(String group) {
+		currentGroup.set(group);
+	}
+
+	public static String group() {
+		return currentGroup.get();
+	}
+
+	/**
+	 * Starts timing a stage of the current group. Nothing is recorded if no
+	 * report is bound to the current thread.
+	 */
+	public static Timer time(String stage) {
+		return time(stage, -1);
+	}
+
+	public static Timer time(String stage, int fold) {
+		return new Timer(currentReport.get(), stage, currentGroup.get(), fold);
+	}
+
+	/**
+	 * Wraps a task so that it runs with the report and the group of the
+	 * calling thread.
+	 */
+	static <T> Callable<T> propagate(Callable<T> task) {
+		RunReport report = currentReport.get();
+		String group = currentGroup.get();
+		if (report == null && group == null) {
+			return task;
+		}
+		return () -> {
+			RunReport prevReport = currentReport.get();
+			String prevGroup = currentGroup.get();
+			currentReport.set(report);
+			currentGroup.set(group);
+			try {
+				return task.call();
+			} finally {
+				currentReport.set(prevReport);
+				currentGroup.set(prevGroup);
+			}
+		};
+	}
+
+	/**
+	 * Copies the entries of the given group from another report (e.g. the
+	 * loading of an input shared by several jobs).
+	 */
+	public void addAll(RunReport other, String group) {
+		for (Entry e : other.entries) {
+			if (group.equals(e.group)) {
+				entries.add(e);
+			}
+		}
+	}
+
+	public List<Entry> getEntries() {
+		List<Entry> res = new ArrayList<Entry>(entries);
+		Collections.sort(res, Comparator.comparingLong((Entry e) -> e.startNanos));
+		return res;
+	}
+
+	/**
+	 * Writes the report next to the output of the analysis, as
+	 * OUTPUT.timing.csv (one row per stage) and OUTPUT.timing.json (the
+	 * stages, plus their totals per stage and per group).
+	 */
+	public void save(String output) throws IOException {
+		String base = FilenameUtils.removeExtension(output);
+		saveCsv(base + ".timing.csv");
+		saveJson(base + ".timing.json");
+	}
+
+	/**
+	 * The time the stages are relative to: the creation of the report, or the
+	 * start of the earliest stage copied from another report.
+	 */
+	private long origin() {
+		long origin = startNanos;
+		for (Entry e : entries) {
+			origin = Math.min(origin, e.startNanos);
+		}
+		return origin;
+	}
+
+	private void saveCsv(String filename) throws IOException {
+		long origin = origin();
+		FileUtils.forceMkdirParent(new File(filename));
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filename));
+				CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT
+						.withQuoteMode(QuoteMode.MINIMAL)
+						.withHeader("Stage", "Group", "Fold", "Thread", "Start (ms)", "Wall (ms)", "CPU (ms)", "Allocated (bytes)"))) {
+			for (Entry e : getEntries()) {
+				csvPrinter.printRecord(e.stage, e.group == null ? "" : e.group, e.fold < 0 ? "" : Integer.toString(e.fold),
+						e.thread, millis(e.startNanos - origin), millis(e.wallNanos), millis(e.cpuNanos), e.allocatedBytes);
+			}
+		}
+	}
+
+	private void saveJson(String filename) throws IOException {
+		long origin = origin();
+		List<Entry> sorted = getEntries();
+		Map<String, long[]> byStage = new LinkedHashMap<String, long[]>();
+		Map<String, long[]> byGroup = new LinkedHashMap<String, long[]>();
+		for (Entry e : sorted) {
+			sum(byStage, e.stage, e);
+			if (e.group != null && !CONTAINER_STAGES.contains(e.stage)) {
+				sum(byGroup, e.group, e);
+			}
+		}
+		List<Map.Entry<String, long[]>> groups = new ArrayList<Map.Entry<String, long[]>>(byGroup.entrySet());
+		// slowest groups first
+		Collections.sort(groups, (a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"wallMs\": ").append(millis(System.nanoTime() - origin)).append(",\n");
+		sb.append("  \"stages\": {");
+		appendTotals(sb, new ArrayList<Map.Entry<String, long[]>>(byStage.entrySet()));
+		sb.append("},\n  \"groups\": {");
+		appendTotals(sb, groups);
+		sb.append("},\n  \"entries\": [");
+		String sep = "\n";
+		for (Entry e : sorted) {
+			sb.append(sep).append("    {\"stage\": ").append(jsonString(e.stage))
+				.append(", \"group\": ").append(e.group == null ? "null" : jsonString(e.group))
+				.append(", \"fold\": ").append(e.fold < 0 ? "null" : Integer.toString(e.fold))
+				.append(", \"thread\": ").append(jsonString(e.thread))
+				.append(", \"startMs\": ").append(millis(e.startNanos - origin))
+				.append(", \"wallMs\": ").append(millis(e.wallNanos))
+				.append(", \"cpuMs\": ").append(millis(e.cpuNanos))
+				.append(", \"allocatedBytes\": ").append(e.allocatedBytes).append("}");
+			sep = ",\n";
+		}
+		sb.append("\n  ]\n}\n");
+
+		FileUtils.forceMkdirParent(new File(filename));
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filename))) {
+			writer.write(sb.toString());
+		}
+	}
+
+	private static void sum(Map<String, long[]> totals, String key, Entry e) {
+		long[] t = totals.get(key);
+		if (t == null) {
+			t = new long[3];
+			totals.put(key, t);
+		}
+		t[0] += e.wallNanos;
+		t[1] += Math.max(0, e.cpuNanos);
+		t[2] += Math.max(0, e.allocatedBytes);
+	}
+
+	private static void appendTotals(StringBuilder sb, List<Map.Entry<String, long[]>> totals) {
+		String sep = "\n";
+		for (Map.Entry<String, long[]> t : totals) {
+			sb.append(sep).append("    ").append(jsonString(t.getKey()))
+				.append(": {\"wallMs\": ").append(millis(t.getValue()[0]))
+				.append(", \"cpuMs\": ").append(millis(t.getValue()[1]))
+				.append(", \"allocatedBytes\": ").append(t.getValue()[2]).append("}");
+			sep = ",\n";
+		}
+		if (!totals.isEmpty()) {
+			sb.append("\n  ");
+		}
+	}
+
+	private static String millis(long nanos) {
+		if (nanos < 0) {
+			return "-1";
+		}
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	private static String jsonString(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : s.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static long threadCpuTime() {
+		if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+			return -1;
+		}
+		return THREADS.getCurrentThreadCpuTime();
+	}
+
+	private static long threadAllocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,244 @@
+package it.unibo.disi.asnanalysis;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * The approximate cross-validation of -op Screen: a linear SVM (hinge loss)
+ * or logistic regression trained by a few epochs of stochastic gradient
+ * descent on the rows of each training fold, instead of SMO.
+ *
+ * The folds are the ones of the exact cross-validation (see
+ * FeatureView.folds()), and the rows are preprocessed as the SVM preprocesses
+ * them, with the statistics of the training rows of the fold: missing values
+ * replaced by the mean (numeric) or the mode (nominal), nominal attributes
+ * with more than two values binarized, all the columns normalized to [0, 1].
+ * The preprocessed rows of a fold are a single row-major double[], and the
+ * model is a double[] of weights and a bias.
+ *
+ * The regularization is the one of the SVM (lambda = 1 / (C n), C = 1), with
+ * the learning rate eta0 / (1 + lambda eta0 t) at step t. The model is the
+ * mean of the weights of the steps of the last epoch, which varies much less
+ * from fold to fold than the weights of the last step. The rows are visited
+ * in a random order at each epoch, drawn from the seed of the folds, so that
+ * the results are repeatable.
+ */
+public class SgdScreen {
+
+	private static final double C = 1.0;
+	private static final double ETA0 = 0.5;
+
+	/**
+	 * The loss minimized by the linear model.
+	 */
+	public enum Loss {
+		HINGE, LOG
+	}
+
+
+	private final FeatureView view;
+	private final Loss loss;
+	private final int epochs;
+	// the first preprocessed column of each attribute, and their number
+	private final int[] firstColumn;
+	private final int numColumns;
+
+
+	public SgdScreen(FeatureView view, Loss loss, int epochs) {
+		this.view = view;
+		this.loss = loss;
+		this.epochs = epochs;
+		Instances header = view.header();
+		this.firstColumn = new int[view.numAttributes()];
+		int numColumns = 0;
+		for (int i = 0; i < view.numAttributes(); i++) {
+			firstColumn[i] = numColumns;
+			if (i != view.classIndex()) {
+				numColumns += width(header.attribute(i));
+			}
+		}
+		this.numColumns = numColumns;
+	}
+
+	/**
+	 * The confusion matrix of the cross-validation with the given seed, as
+	 * Evaluation.confusionMatrix() (actual class by rows).
+	 */
+	public double[][] crossValidate(int seed, int numFolds) {
+		FeatureView.Folds split = view.folds(seed, numFolds);
+		int numClasses = view.header().classAttribute().numValues();
+		double[][] matrix = new double[numClasses][numClasses];
+		Random rand = new Random(seed);
+		for (int n = 0; n < numFolds; n++) {
+			int[] train = trainingRows(split.train[n]);
+			double[] x = preprocess(train);
+			double[] w = train(x, train, rand);
+			for (int pos : split.test[n]) {
+				int actual = view.classCode(pos);
+				if (actual < 0) {
+					continue;
+				}
+				int predicted = margin(x, pos, w) >= 0 ? 1 : 0;
+				matrix[actual][predicted] += view.weight(pos);
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * The positions with class and weight, the ones SMO trains on.
+	 */
+	private int[] trainingRows(int[] positions) {
+		int kept = 0;
+		int[] res = new int[positions.length];
+		for (int pos : positions) {
+			if (view.classCode(pos) >= 0 && view.weight(pos) > 0) {
+				res[kept++] = pos;
+			}
+		}
+		return Arrays.copyOf(res, kept);
+	}
+
+	/**
+	 * The preprocessed rows of the whole view (numRows x numColumns), with the
+	 * statistics of the given training rows.
+	 */
+	private double[] preprocess(int[] train) {
+		Instances header = view.header();
+		double[] x = new double[view.numRows() * numColumns];
+		for (int i = 0; i < view.numAttributes(); i++) {
+			if (i == view.classIndex()) {
+				continue;
+			}
+			Attribute attr = header.attribute(i);
+			int first = firstColumn[i];
+			int width = width(attr);
+
+			// the value of the missing values: the mean or the mode
+			double replacement;
+			if (attr.isNominal()) {
+				double[] counts = new double[attr.numValues()];
+				for (int pos : train) {
+					double v = view.value(pos, i);
+					if (!Double.isNaN(v)) {
+						counts[(int) v] += view.weight(pos);
+					}
+				}
+				int mode = 0;
+				for (int k = 1; k < counts.length; k++) {
+					if (counts[k] > counts[mode]) {
+						mode = k;
+					}
+				}
+				replacement = mode;
+			} else {
+				double sum = 0;
+				double weight = 0;
+				for (int pos : train) {
+					double v = view.value(pos, i);
+					if (!Double.isNaN(v)) {
+						sum += view.weight(pos) * v;
+						weight += view.weight(pos);
+					}
+				}
+				replacement = weight > 0 ? sum / weight : 0;
+			}
+
+			for (int pos = 0; pos < view.numRows(); pos++) {
+				double v = view.value(pos, i);
+				if (Double.isNaN(v)) {
+					v = replacement;
+				}
+				if (width == 1) {
+					x[pos * numColumns + first] = v;
+				} else {
+					x[pos * numColumns + first + (int) v] = 1;
+				}
+			}
+
+			// min-max normalization on the training rows
+			for (int c = first; c < first + width; c++) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int pos : train) {
+					min = Math.min(min, x[pos * numColumns + c]);
+					max = Math.max(max, x[pos * numColumns + c]);
+				}
+				for (int pos = 0; pos < view.numRows(); pos++) {
+					int p = pos * numColumns + c;
+					x[p] = max > min ? (x[p] - min) / (max - min) : 0;
+				}
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * A few epochs of SGD on the training rows: the weights (the bias last),
+	 * averaged over the steps of the last epoch.
+	 */
+	private double[] train(double[] x, int[] train, Random rand) {
+		double lambda = 1.0 / (C * Math.max(1, train.length));
+		double[] w = new double[numColumns + 1];
+		double[] mean = new double[numColumns + 1];
+		int[] order = train.clone();
+		long t = 0;
+		for (int epoch = 0; epoch < epochs; epoch++) {
+			for (int j = order.length - 1; j > 0; j--) {
+				int k = rand.nextInt(j + 1);
+				int tmp = order[j];
+				order[j] = order[k];
+				order[k] = tmp;
+			}
+			boolean last = epoch == epochs - 1;
+			int steps = 0;
+			for (int pos : order) {
+				double eta = ETA0 / (1 + lambda * ETA0 * t++);
+				double y = view.classCode(pos) == 1 ? 1 : -1;
+				double z = y * margin(x, pos, w);
+				double g;
+				if (loss == Loss.HINGE) {
+					g = z < 1 ? y : 0;
+				} else {
+					g = y / (1 + Math.exp(z));
+				}
+				g *= eta * view.weight(pos);
+				double shrink = 1 - eta * lambda;
+				int p = pos * numColumns;
+				for (int c = 0; c < numColumns; c++) {
+					w[c] = w[c] * shrink + g * x[p + c];
+				}
+				w[numColumns] += g;
+				if (last) {
+					// running mean of the weights of the steps of the last epoch
+					steps++;
+					for (int c = 0; c <= numColumns; c++) {
+						mean[c] += (w[c] - mean[c]) / steps;
+					}
+				}
+			}
+		}
+		return mean;
+	}
+
+	private double margin(double[] x, int pos, double[] w) {
+		int p = pos * numColumns;
+		double res = w[numColumns];
+		for (int c = 0; c < numColumns; c++) {
+			res += w[c] * x[p + c];
+		}
+		return res;
+	}
+
+	/**
+	 * The number of preprocessed columns of an attribute: one per value for
+	 * the nominal attributes with more than two values, one otherwise.
+	 */
+	private static int width(Attribute attr) {
+		return attr.isNominal() && attr.numValues() > 2 ? attr.numValues() : 1;
+	}
+
+}
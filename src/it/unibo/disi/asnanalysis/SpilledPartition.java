@@ -0,0 +1,186 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ArffLoader;
+
+/**
+ * A DatasetPartition built while reading an ARFF file row by row, without
+ * ever keeping the whole dataset in memory.
+ *
+ * The file is read by ArffParser, or by ArffLoader if it has attributes that
+ * ArffParser does not support. Each row that has an RF and a level is
+ * appended to a spill file, as its weight followed by its values (fixed-size
+ * records), and its position in the file is added to the bucket of its RF
+ * and level. The rows of a group
+ * are read back from the file when the group is analysed, so that the memory
+ * used by the dataset is the header, the buckets and the groups being
+ * analysed. The groups are the same, with the same rows in the same order,
+ * as the ones of a DatasetPartition of the whole dataset.
+ */
+public class SpilledPartition extends DatasetPartition implements Closeable {
+
+	private final File file;
+	private final FileChannel channel;
+	private final int numAttributes;
+
+
+	private SpilledPartition(Instances header, int rfAttrIndex, int levelAttrIndex, int[][][] buckets, File file) throws IOException {
+		super(header, rfAttrIndex, levelAttrIndex, buckets);
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.numAttributes = header.numAttributes();
+	}
+
+	/**
+	 * Reads the given ARFF file with a single sequential pass, spilling its
+	 * rows to a temporary file.
+	 *
+	 * @param rfAttrIndex the (0-based) index of the nominal RF attribute
+	 * @param levelAttrIndex the (0-based) index of the nominal level attribute
+	 */
+	public static SpilledPartition load(String arffFile, int rfAttrIndex, int levelAttrIndex) throws IOException {
+		ArffParser parser = new ArffParser(new File(arffFile));
+		ArffLoader loader = null;
+		Instances header = parser.getStructure();
+		if (!ArffParser.supports(header)) {
+			parser.close();
+			parser = null;
+			loader = new ArffLoader();
+			loader.setFile(new File(arffFile));
+			header = loader.getStructure();
+		}
+		int numRFs = header.attribute(rfAttrIndex).numValues();
+		int numLevels = header.attribute(levelAttrIndex).numValues();
+		int[][][] buckets = new int[numRFs][numLevels][16];
+		int[][] sizes = new int[numRFs][numLevels];
+
+		File file = File.createTempFile("asn-", ".spill");
+		file.deleteOnExit();
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+				int numRows = 0;
+				double[] values = new double[header.numAttributes()];
+				while (true) {
+					double weight;
+					if (parser != null) {
+						if (!parser.next(values)) {
+							break;
+						}
+						weight = parser.weight();
+					} else {
+						Instance inst = loader.getNextInstance(header);
+						if (inst == null) {
+							break;
+						}
+						for (int i = 0; i < values.length; i++) {
+							values[i] = inst.value(i);
+						}
+						weight = inst.weight();
+					}
+					if (Utils.isMissingValue(values[rfAttrIndex]) || Utils.isMissingValue(values[levelAttrIndex])) {
+						continue;
+					}
+					int rf = (int) values[rfAttrIndex];
+					int level = (int) values[levelAttrIndex];
+					if (sizes[rf][level] == buckets[rf][level].length) {
+						buckets[rf][level] = Arrays.copyOf(buckets[rf][level], 2 * sizes[rf][level]);
+					}
+					buckets[rf][level][sizes[rf][level]++] = numRows++;
+					out.writeDouble(weight);
+					for (int i = 0; i < values.length; i++) {
+						out.writeDouble(values[i]);
+					}
+				}
+			}
+			for (int rf = 0; rf < numRFs; rf++) {
+				for (int level = 0; level < numLevels; level++) {
+					buckets[rf][level] = Arrays.copyOf(buckets[rf][level], sizes[rf][level]);
+				}
+			}
+			return new SpilledPartition(new Instances(header, 0), rfAttrIndex, levelAttrIndex, buckets, file);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(file.toPath());
+			throw e;
+		} finally {
+			if (parser != null) {
+				parser.close();
+			}
+		}
+	}
+
+	/**
+	 * The rows of the given level that belong to any of the given RFs, read
+	 * from the spill file into a FeatureMatrix of their own.
+	 */
+	@Override
+	public FeatureView group(int[] rfs, int level, int[] removed, String className) throws IOException {
+		FeatureMatrix group = read(rows(rfs, level));
+		int[] all = new int[group.numRows()];
+		for (int r = 0; r < all.length; r++) {
+			all[r] = r;
+		}
+		return group.viewWithout(all, removed, className);
+	}
+
+	@Override
+	public Instances subset(int[] rows) throws IOException {
+		FeatureMatrix group = read(rows);
+		Instances res = new Instances(getHeader(), rows.length);
+		for (int r = 0; r < rows.length; r++) {
+			double[] values = new double[numAttributes];
+			for (int i = 0; i < numAttributes; i++) {
+				values[i] = group.value(r, i);
+			}
+			res.add(new DenseInstance(group.weight(r), values));
+		}
+		return res;
+	}
+
+	private FeatureMatrix read(int[] rows) throws IOException {
+		int recordSize = 8 * (numAttributes + 1);
+		ByteBuffer buf = ByteBuffer.allocate(recordSize);
+		double[] values = new double[rows.length * numAttributes];
+		double[] weights = new double[rows.length];
+		for (int r = 0; r < rows.length; r++) {
+			buf.clear();
+			long pos = (long) rows[r] * recordSize;
+			while (buf.hasRemaining()) {
+				if (channel.read(buf, pos + buf.position()) < 0) {
+					throw new EOFException("Truncated spill file " + file);
+				}
+			}
+			buf.flip();
+			weights[r] = buf.getDouble();
+			for (int i = 0; i < numAttributes; i++) {
+				values[r * numAttributes + i] = buf.getDouble();
+			}
+		}
+		return new FeatureMatrix(getHeader(), values, weights);
+	}
+
+	/**
+	 * Deletes the spill file.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		Files.deleteIfExists(file.toPath());
+	}
+
+}
@@ -0,0 +1,155 @@
+package it.unibo.disi.asnanalysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * A worker of the distributed mode (-op Worker -port N): runs the
+ * cross-validations sent by a Coordinator (see there for the protocol) with
+ * the threads of the analyses (-threads), one connection per request. The
+ * Gram matrix and the kernel cache of each request are the ones of the
+ * coordinator, not the -gram and -kernelcache of the worker.
+ *
+ * The worker listens on the loopback interface unless another address is
+ * given (-bind), and only runs the classifiers of the analyses (see
+ * AsnAnalysis.classifierFactory()).
+ */
+public class Worker {
+
+	private final ServerSocket server;
+	private final ExecutorService connections;
+
+
+	/**
+	 * @param bindAddress the address of the interface to listen on
+	 */
+	public Worker(String bindAddress, int port) throws IOException {
+		this.server = new ServerSocket(port, 50, InetAddress.getByName(bindAddress));
+		AtomicInteger counter = new AtomicInteger();
+		this.connections = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "asn-connection-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Answers the requests until the process is stopped.
+	 */
+	public void run() throws IOException {
+		try {
+			while (true) {
+				Socket socket = server.accept();
+				connections.execute(() -> handle(socket));
+			}
+		} finally {
+			connections.shutdownNow();
+			server.close();
+		}
+	}
+
+	private void handle(Socket socket) {
+		try (Socket s = socket) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			if (in.readInt() != Coordinator.MAGIC || in.readInt() != Coordinator.VERSION) {
+				out.writeInt(Coordinator.ERROR);
+				out.writeUTF("Unknown request");
+				out.flush();
+				return;
+			}
+			String classifierSpec = in.readUTF();
+			String gramStorage = in.readUTF();
+			long kernelBudget = AsnAnalysis.kernelBudget(in.readLong());
+			Callable<Classifier> classifierFactory;
+			try {
+				if (gramStorage.isEmpty()) {
+					gramStorage = null;
+				} else if (!gramStorage.equals("double") && !gramStorage.equals("float")) {
+					throw new IllegalArgumentException("Unsupported Gram matrix: " + gramStorage);
+				}
+				if (kernelBudget < 0) {
+					throw new IllegalArgumentException("Negative kernel cache");
+				}
+				classifierFactory = AsnAnalysis.classifierFactory(classifierSpec, kernelBudget);
+			} catch (Exception e) {
+				AsnAnalysis.LOG.info("Warning: request from " + s.getRemoteSocketAddress() + " rejected (" + e.getMessage() + ")");
+				out.writeInt(Coordinator.ERROR);
+				out.writeUTF(String.valueOf(e));
+				out.flush();
+				return;
+			}
+			int folds = in.readInt();
+			int numSeeds = in.readInt();
+			List<Integer> seeds = new ArrayList<Integer>(numSeeds);
+			for (int i = 0; i < numSeeds; i++) {
+				seeds.add(in.readInt());
+			}
+			FeatureView view = readSlice(in);
+
+			List<Evaluation> evals;
+			try {
+				RunReport.setGroup(null);
+				evals = AsnAnalysis.crossValidateFolds(view, classifierFactory, seeds, folds, gramStorage, kernelBudget);
+			} catch (Exception e) {
+				AsnAnalysis.LOG.info("Error: " + e);
+				out.writeInt(Coordinator.ERROR);
+				out.writeUTF(String.valueOf(e));
+				out.flush();
+				return;
+			}
+			out.writeInt(Coordinator.OK);
+			out.writeInt(evals.size());
+			for (Evaluation eval : evals) {
+				double[][] matrix = eval.confusionMatrix();
+				out.writeInt(matrix.length);
+				for (double[] row : matrix) {
+					for (double v : row) {
+						out.writeDouble(v);
+					}
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			AsnAnalysis.LOG.info("Warning: " + e);
+		}
+	}
+
+	private static FeatureView readSlice(DataInputStream in) throws IOException {
+		byte[] arff = new byte[in.readInt()];
+		in.readFully(arff);
+		Instances header = new Instances(new StringReader(new String(arff, StandardCharsets.UTF_8)));
+		header.setClassIndex(in.readInt());
+		int numRows = in.readInt();
+		int numAttributes = in.readInt();
+		Instances data = new Instances(header, numRows);
+		for (int r = 0; r < numRows; r++) {
+			double[] values = new double[numAttributes];
+			for (int i = 0; i < numAttributes; i++) {
+				values[i] = in.readDouble();
+			}
+			data.add(new DenseInstance(in.readDouble(), values));
+		}
+		return new FeatureMatrix(data).view(header.classAttribute().name());
+	}
+
+}